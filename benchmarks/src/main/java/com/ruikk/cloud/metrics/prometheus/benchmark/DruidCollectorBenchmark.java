@@ -0,0 +1,191 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.benchmark;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.stat.DruidDataSourceStatManager;
+import com.alibaba.druid.support.http.stat.WebAppStat;
+import com.alibaba.druid.support.http.stat.WebAppStatManager;
+import com.alibaba.druid.support.http.stat.WebURIStat;
+import com.ruikk.cloud.metrics.prometheus.collector.DruidCollector;
+import com.ruikk.cloud.metrics.prometheus.exposition.ExpositionWriter;
+import io.prometheus.client.Collector;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the scrape cost of {@link DruidCollector} against synthetic Druid stats: {@code dataSources} pools backed
+ * by Druid's mock driver sharing {@code sqlCount} distinct statements of about {@code sqlLength} characters, and
+ * {@code uriCount} web URIs.
+ * <p>
+ * Run with {@code java -jar target/benchmarks.jar -prof gc} to also report allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DruidCollectorBenchmark {
+
+    @Param({"4"})
+    public int dataSources;
+
+    @Param({"1000", "5000"})
+    public int sqlCount;
+
+    @Param({"500"})
+    public int sqlLength;
+
+    @Param({"200"})
+    public int uriCount;
+
+    @Param({"false", "true"})
+    public boolean incremental;
+
+    private final List<DruidDataSource> pools = new ArrayList<>();
+    private WebAppStat webAppStat;
+
+    private DruidCollector collector;
+    private ExpositionWriter exposition;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        for (int i = 0; i < dataSources; i++) {
+            DruidDataSource dataSource = new DruidDataSource();
+            dataSource.setName("pool-" + i);
+            dataSource.setUrl("jdbc:mock:benchmark-" + i);
+            dataSource.setFilters("stat");
+            dataSource.init();
+            dataSource.getDataSourceStat().setMaxSqlSize(sqlCount);
+            pools.add(dataSource);
+        }
+
+        for (int i = 0; i < sqlCount; i++) {
+            DruidDataSource dataSource = pools.get(i % pools.size());
+            try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+                stmt.execute(sql(i));
+            }
+        }
+
+        webAppStat = new WebAppStat("/benchmark");
+        webAppStat.setMaxStatUriCount(uriCount);
+        WebAppStatManager.getInstance().addWebAppStatSet(webAppStat);
+        for (int i = 0; i < uriCount; i++) {
+            WebURIStat uriStat = webAppStat.getURIStat("/api/v1/resource-" + i + "/items", true);
+            uriStat.beforeInvoke();
+            uriStat.afterInvoke(null, TimeUnit.MILLISECONDS.toNanos(i % 250));
+        }
+
+        collector = new DruidCollector(Collections.singletonMap("application", "benchmark"), true, true);
+        collector.setIncremental(incremental);
+        exposition = new ExpositionWriter(false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        collector.close();
+        WebAppStatManager.getInstance().remove(webAppStat);
+        pools.forEach(DruidDataSource::close);
+        DruidDataSourceStatManager.clear();
+    }
+
+    /**
+     * Builds a SELECT of roughly {@code sqlLength} characters, distinct for every {@code index}.
+     */
+    private String sql(int index) {
+        StringBuilder sb = new StringBuilder(sqlLength + 64);
+        sb.append("SELECT t.id, t.tenant_id, t.created_at");
+        int column = 0;
+        while (sb.length() < sqlLength - 64) {
+            sb.append(", t.attribute_").append(column++);
+        }
+        sb.append("\n  FROM orders t\n WHERE t.id = ").append(index).append(" AND t.status IN (1, 2, 3)");
+        return sb.toString();
+    }
+
+    @Benchmark
+    public List<Collector.MetricFamilySamples> collect() {
+        return collector.collect();
+    }
+
+    @Benchmark
+    public void collectAndWriteText(Blackhole blackhole) throws IOException {
+        BlackholeWriter writer = new BlackholeWriter(blackhole);
+        TextFormat.write004(writer, Collections.enumeration(collector.collect()));
+        writer.flush();
+    }
+
+    @Benchmark
+    public void streamText(Blackhole blackhole) throws IOException {
+        collector.collect(exposition.reset(new BlackholeWriter(blackhole)));
+        exposition.finish();
+    }
+
+    /**
+     * Writer that only counts its output, so that only the cost of producing the exposition is measured.
+     */
+    private static final class BlackholeWriter extends Writer {
+
+        private final Blackhole blackhole;
+        private long written;
+
+        private BlackholeWriter(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int c) {
+            written++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            written += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            written += len;
+        }
+
+        @Override
+        public void flush() {
+            blackhole.consume(written);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
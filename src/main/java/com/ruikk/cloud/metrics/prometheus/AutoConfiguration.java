@@ -24,6 +24,8 @@
 package com.ruikk.cloud.metrics.prometheus;
 
 import com.alibaba.druid.stat.DruidStatManagerFacade;
+import com.ruikk.cloud.metrics.prometheus.exposition.DruidMetricsServlet;
+import com.ruikk.cloud.metrics.prometheus.filter.DruidMetricsFilterPostProcessor;
 import com.ruikk.cloud.metrics.prometheus.manager.DruidPrometheusManager;
 import io.micrometer.prometheus.PrometheusMeterRegistry;
 import org.springframework.boot.actuate.autoconfigure.metrics.MetricsProperties;
@@ -31,14 +33,18 @@ import org.springframework.boot.actuate.autoconfigure.metrics.export.prometheus.
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.servlet.http.HttpServlet;
+
 @Configuration
 @ConditionalOnClass({DruidStatManagerFacade.class, MetricsProperties.class})
 @ConditionalOnBean(PrometheusMeterRegistry.class)
-@EnableConfigurationProperties(MetricsProperties.class)
+@EnableConfigurationProperties({MetricsProperties.class, DruidMetricsProperties.class})
 @AutoConfigureAfter(PrometheusMetricsExportAutoConfiguration.class)
 public class AutoConfiguration {
 
@@ -46,9 +52,10 @@ public class AutoConfiguration {
 
     public AutoConfiguration(
             MetricsProperties properties,
+            DruidMetricsProperties druidProperties,
             PrometheusMeterRegistry registry
     ) {
-        this.druidPrometheusManager = new DruidPrometheusManager(properties);
+        this.druidPrometheusManager = new DruidPrometheusManager(properties, druidProperties);
         this.druidPrometheusManager.registerCollector(registry);
     }
 
@@ -56,4 +63,26 @@ public class AutoConfiguration {
     DruidPrometheusManager druidPrometheusManager() {
         return druidPrometheusManager;
     }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "management.metrics.druid.filter", name = "enabled", havingValue = "true")
+    static DruidMetricsFilterPostProcessor druidMetricsFilterPostProcessor() {
+        return new DruidMetricsFilterPostProcessor();
+    }
+
+    @Configuration
+    @ConditionalOnClass(HttpServlet.class)
+    @ConditionalOnProperty(prefix = "management.metrics.druid.exposition", name = "enabled", havingValue = "true")
+    static class ExpositionConfiguration {
+
+        @Bean
+        ServletRegistrationBean<DruidMetricsServlet> druidMetricsServlet(
+                DruidPrometheusManager druidPrometheusManager,
+                DruidMetricsProperties druidProperties
+        ) {
+            DruidMetricsProperties.Exposition exposition = druidProperties.getExposition();
+            DruidMetricsServlet servlet = new DruidMetricsServlet(druidPrometheusManager.getCollector(), exposition.isGzip());
+            return new ServletRegistrationBean<>(servlet, exposition.getPath());
+        }
+    }
 }
@@ -0,0 +1,50 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.ruikk.cloud.metrics.prometheus.binder.DruidMeterBinder;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers {@link DruidMeterBinder} with every Micrometer registry, independently of the Prometheus collector.
+ * Common tags from {@code management.metrics.tags} are applied by the registries themselves.
+ */
+@Configuration
+@ConditionalOnClass({DruidDataSource.class, MeterBinder.class})
+@ConditionalOnProperty(prefix = "management.metrics.druid.binder", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(DruidMetricsProperties.class)
+public class DruidMeterBinderAutoConfiguration {
+
+    @Bean
+    DruidMeterBinder druidMeterBinder(DruidMetricsProperties druidProperties) {
+        return new DruidMeterBinder(Tags.empty(), druidProperties.getBinder().getRefreshInterval());
+    }
+}
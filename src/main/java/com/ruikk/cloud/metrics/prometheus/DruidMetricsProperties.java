@@ -0,0 +1,529 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Tuning options for the Druid exporter, bound from {@code management.metrics.druid.*}.
+ * Whether the exporter is enabled at all is still controlled by {@code management.metrics.enable.druid}.
+ */
+@ConfigurationProperties(prefix = "management.metrics.druid")
+public class DruidMetricsProperties {
+
+    /**
+     * Maximum number of pool, SQL and URI identities whose label values are cached between scrapes.
+     */
+    private int labelCacheSize = 10000;
+
+    /**
+     * Export {@code druid_exporter_*} families describing the exporter's own scrape cost.
+     */
+    private boolean exporterMetrics = false;
+
+    /**
+     * Reuse the samples of series that did not change since the previous scrape.
+     */
+    private boolean incremental = false;
+
+    private final Sql sql = new Sql();
+
+    private final Snapshot snapshot = new Snapshot();
+
+    private final Exposition exposition = new Exposition();
+
+    private final Filter filter = new Filter();
+
+    private final Parallel parallel = new Parallel();
+
+    private final Binder binder = new Binder();
+
+    private final Sampler sampler = new Sampler();
+
+    private final Counters counters = new Counters();
+
+    private final Push push = new Push();
+
+    public int getLabelCacheSize() {
+        return labelCacheSize;
+    }
+
+    public void setLabelCacheSize(int labelCacheSize) {
+        this.labelCacheSize = labelCacheSize;
+    }
+
+    public boolean isExporterMetrics() {
+        return exporterMetrics;
+    }
+
+    public void setExporterMetrics(boolean exporterMetrics) {
+        this.exporterMetrics = exporterMetrics;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public Sql getSql() {
+        return sql;
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public Exposition getExposition() {
+        return exposition;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public Parallel getParallel() {
+        return parallel;
+    }
+
+    public Binder getBinder() {
+        return binder;
+    }
+
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    public Counters getCounters() {
+        return counters;
+    }
+
+    public Push getPush() {
+        return push;
+    }
+
+    /**
+     * Options for the {@code druid_sql_*} families.
+     */
+    public static class Sql {
+
+        /**
+         * Merge statements that differ only in literals, IN list lengths or whitespace into one series.
+         */
+        private boolean fingerprint = false;
+
+        /**
+         * Number of statements exported per pool, the others are summed into {@code sql="__other__"}. 0 exports all.
+         */
+        private int topK = 0;
+
+        /**
+         * Ranking used by top-K selection: {@code TotalTime}, {@code ExecuteCount} or {@code ErrorCount}.
+         */
+        private String rankBy = "TotalTime";
+
+        /**
+         * Label SQL series with a short {@code sql_id} hash and export the statement text once in {@code druid_sql_info}.
+         */
+        private boolean idLabel = false;
+
+        /**
+         * Maximum length of the statement text in {@code druid_sql_info}, 0 keeps the full text.
+         */
+        private int infoMaxLength = 0;
+
+        /**
+         * Minimum time between two exports of {@code druid_sql_info}, 0 exports it on every scrape.
+         */
+        private Duration infoInterval = Duration.ZERO;
+
+        public boolean isFingerprint() {
+            return fingerprint;
+        }
+
+        public void setFingerprint(boolean fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        public int getTopK() {
+            return topK;
+        }
+
+        public void setTopK(int topK) {
+            this.topK = topK;
+        }
+
+        public String getRankBy() {
+            return rankBy;
+        }
+
+        public void setRankBy(String rankBy) {
+            this.rankBy = rankBy;
+        }
+
+        public boolean isIdLabel() {
+            return idLabel;
+        }
+
+        public void setIdLabel(boolean idLabel) {
+            this.idLabel = idLabel;
+        }
+
+        public int getInfoMaxLength() {
+            return infoMaxLength;
+        }
+
+        public void setInfoMaxLength(int infoMaxLength) {
+            this.infoMaxLength = infoMaxLength;
+        }
+
+        public Duration getInfoInterval() {
+            return infoInterval;
+        }
+
+        public void setInfoInterval(Duration infoInterval) {
+            this.infoInterval = infoInterval;
+        }
+    }
+
+    /**
+     * Background snapshot cache: a scheduled refresher builds the samples once per interval and
+     * scrapes only read the last snapshot.
+     */
+    public static class Snapshot {
+
+        private boolean enabled = false;
+
+        private Duration interval = Duration.ofSeconds(10);
+
+        /**
+         * Snapshots older than this are rebuilt on the scrape thread instead of being served.
+         */
+        private Duration maxStaleness = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public Duration getMaxStaleness() {
+            return maxStaleness;
+        }
+
+        public void setMaxStaleness(Duration maxStaleness) {
+            this.maxStaleness = maxStaleness;
+        }
+    }
+
+    /**
+     * Streaming servlet that writes the Druid families directly in the Prometheus text or OpenMetrics format,
+     * independently of {@code /actuator/prometheus}.
+     */
+    public static class Exposition {
+
+        private boolean enabled = false;
+
+        private String path = "/druid/metrics";
+
+        /**
+         * Compress the response when the scraper sends {@code Accept-Encoding: gzip}.
+         */
+        private boolean gzip = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public boolean isGzip() {
+            return gzip;
+        }
+
+        public void setGzip(boolean gzip) {
+            this.gzip = gzip;
+        }
+    }
+
+    /**
+     * Druid filter recording connection and statement events into striped counters, exported as
+     * {@code druid_filter_*}. Statements are recorded per pool only, per SQL metrics remain {@code druid_sql_*}.
+     */
+    public static class Filter {
+
+        private boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Parallel collection of the pool, SQL and URI sections, bounded by a deadline per scrape.
+     */
+    public static class Parallel {
+
+        /**
+         * Number of worker threads, 0 collects sequentially on the scrape thread.
+         */
+        private int threads = 0;
+
+        /**
+         * Sections not collected within this time are exported with their previous values and marked stale.
+         */
+        private Duration deadline = Duration.ofSeconds(5);
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public Duration getDeadline() {
+            return deadline;
+        }
+
+        public void setDeadline(Duration deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Periodic push of the Druid families to a Pushgateway, for jobs that exit before they are scraped.
+     */
+    public static class Push {
+
+        private boolean enabled = false;
+
+        /**
+         * Endpoint the snapshots are sent to with {@code PUT}, e.g. {@code http://pushgateway:9091/metrics/job/my-job}.
+         */
+        private String url;
+
+        private Duration interval = Duration.ofSeconds(15);
+
+        /**
+         * Number of snapshots waiting to be sent before the oldest is dropped.
+         */
+        private int queueCapacity = 4;
+
+        private boolean gzip = true;
+
+        /**
+         * Connect and read timeout of each push.
+         */
+        private Duration timeout = Duration.ofSeconds(10);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public boolean isGzip() {
+            return gzip;
+        }
+
+        public void setGzip(boolean gzip) {
+            this.gzip = gzip;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * Monotonic {@code _total} counters for the SQL and URI stats that survive Druid stat resets.
+     */
+    public static class Counters {
+
+        private boolean enabled = false;
+
+        /**
+         * How long the totals of a statement or URI that Druid no longer reports are kept.
+         */
+        private Duration ttl = Duration.ofMinutes(30);
+
+        /**
+         * Interval of the built-in reset of the Druid SQL and URI stats, 0 to never reset them.
+         */
+        private Duration resetInterval = Duration.ZERO;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Duration getResetInterval() {
+            return resetInterval;
+        }
+
+        public void setResetInterval(Duration resetInterval) {
+            this.resetInterval = resetInterval;
+        }
+    }
+
+    /**
+     * High frequency sampling of ActiveCount, WaitThreadCount and PoolingCount, exported as max, min, mean and p99 over
+     * the sampling window. The counts are read without taking the pool lock; on a Druid version where that is not
+     * possible every sample takes the lock three times per pool, so the period should then be raised.
+     */
+    public static class Sampler {
+
+        private boolean enabled = false;
+
+        private Duration period = Duration.ofMillis(50);
+
+        /**
+         * Span of the samples the statistics are computed over, usually the scrape interval.
+         */
+        private Duration window = Duration.ofSeconds(15);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getPeriod() {
+            return period;
+        }
+
+        public void setPeriod(Duration period) {
+            this.period = period;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+    }
+
+    /**
+     * Micrometer meters reading live {@code DruidDataSource} fields, usable with any Micrometer registry.
+     */
+    public static class Binder {
+
+        private boolean enabled = false;
+
+        /**
+         * How often data sources created or closed at runtime are detected.
+         */
+        private Duration refreshInterval = Duration.ofSeconds(10);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.binder;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.stat.DruidDataSourceStatManager;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Registers Micrometer meters reading the live fields of every {@link DruidDataSource}, so that any Micrometer registry
+ * can publish pool metrics without copying Druid's stat maps.
+ * <p>
+ * The set of data sources is re-read from {@link DruidDataSourceStatManager} every {@code refreshInterval}: meters are
+ * added for new pools and removed for closed ones.
+ */
+public class DruidMeterBinder implements MeterBinder, AutoCloseable {
+
+    private static final String TAG_POOL = "pool";
+
+    private static final String[] GAUGE_NAMES = {
+            "druid.pool.active", "druid.pool.active.peak", "druid.pool.idle", "druid.pool.idle.peak",
+            "druid.pool.wait.threads", "druid.pool.max.active", "druid.pool.min.idle"
+    };
+
+    private static final String[] GAUGE_DESCRIPTIONS = {
+            "Connections currently borrowed from the pool", "Peak number of borrowed connections",
+            "Connections idle in the pool", "Peak number of idle connections",
+            "Threads waiting for a connection", "Maximum number of connections", "Minimum number of idle connections"
+    };
+
+    private static final List<ToDoubleFunction<DruidDataSource>> GAUGE_FUNCTIONS = Arrays.asList(
+            DruidDataSource::getActiveCount, DruidDataSource::getActivePeak, DruidDataSource::getPoolingCount,
+            DruidDataSource::getPoolingPeak, DruidDataSource::getWaitThreadCount, DruidDataSource::getMaxActive,
+            DruidDataSource::getMinIdle);
+
+    private static final String[] COUNTER_NAMES = {
+            "druid.pool.connect", "druid.pool.connect.errors", "druid.pool.close", "druid.pool.physical.create",
+            "druid.pool.physical.create.errors", "druid.pool.physical.destroy", "druid.pool.wait",
+            "druid.statement.execute", "druid.statement.errors", "druid.transaction.commit", "druid.transaction.rollback"
+    };
+
+    private static final String[] COUNTER_DESCRIPTIONS = {
+            "Connections borrowed from the pool", "Failed attempts to borrow a connection", "Connections returned to the pool",
+            "Physical connections opened", "Failed attempts to open a physical connection", "Physical connections closed",
+            "Times a thread had to wait for a connection", "Statements executed", "Statements that failed",
+            "Transactions committed", "Transactions rolled back"
+    };
+
+    private static final List<ToDoubleFunction<DruidDataSource>> COUNTER_FUNCTIONS = Arrays.asList(
+            DruidDataSource::getConnectCount, DruidDataSource::getConnectErrorCount, DruidDataSource::getCloseCount,
+            DruidDataSource::getCreateCount, DruidDataSource::getCreateErrorCount, DruidDataSource::getDestroyCount,
+            DruidDataSource::getNotEmptyWaitCount, DruidDataSource::getExecuteCount, DruidDataSource::getErrorCount,
+            DruidDataSource::getCommitCount, DruidDataSource::getRollbackCount);
+
+    private final Tags tags;
+    private final List<MeterRegistry> registries = new CopyOnWriteArrayList<>();
+    private final Map<DruidDataSource, List<Meter>> meters = new IdentityHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public DruidMeterBinder(Iterable<Tag> tags, Duration refreshInterval) {
+        this.tags = Tags.of(tags);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "druid-metrics-binder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, refreshInterval.toMillis());
+        this.scheduler.scheduleWithFixedDelay(this::refresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registries.add(registry);
+        synchronized (meters) {
+            for (Map.Entry<DruidDataSource, List<Meter>> entry : meters.entrySet()) {
+                entry.getValue().addAll(register(registry, entry.getKey()));
+            }
+        }
+        refresh();
+    }
+
+    /**
+     * Registers meters for data sources created since the last refresh and removes those of closed data sources.
+     */
+    public void refresh() {
+        Set<DruidDataSource> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(DruidDataSourceStatManager.getDruidDataSourceInstances());
+
+        synchronized (meters) {
+            Iterator<Map.Entry<DruidDataSource, List<Meter>>> iterator = meters.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<DruidDataSource, List<Meter>> entry = iterator.next();
+                if (!current.contains(entry.getKey()) || entry.getKey().isClosed()) {
+                    remove(entry.getValue());
+                    iterator.remove();
+                }
+            }
+            for (DruidDataSource dataSource : current) {
+                if (!meters.containsKey(dataSource) && !dataSource.isClosed()) {
+                    List<Meter> list = new ArrayList<>();
+                    for (MeterRegistry registry : registries) {
+                        list.addAll(register(registry, dataSource));
+                    }
+                    meters.put(dataSource, list);
+                }
+            }
+        }
+    }
+
+    private List<Meter> register(MeterRegistry registry, DruidDataSource dataSource) {
+        Tags poolTags = tags.and(TAG_POOL, dataSource.getName());
+        List<Meter> list = new ArrayList<>(GAUGE_NAMES.length + COUNTER_NAMES.length);
+        for (int i = 0; i < GAUGE_NAMES.length; i++) {
+            list.add(Gauge.builder(GAUGE_NAMES[i], dataSource, GAUGE_FUNCTIONS.get(i))
+                    .description(GAUGE_DESCRIPTIONS[i])
+                    .tags(poolTags)
+                    .register(registry));
+        }
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            list.add(FunctionCounter.builder(COUNTER_NAMES[i], dataSource, COUNTER_FUNCTIONS.get(i))
+                    .description(COUNTER_DESCRIPTIONS[i])
+                    .tags(poolTags)
+                    .register(registry));
+        }
+        return list;
+    }
+
+    private void remove(List<Meter> list) {
+        for (Meter meter : list) {
+            for (MeterRegistry registry : registries) {
+                registry.remove(meter);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        synchronized (meters) {
+            meters.values().forEach(this::remove);
+            meters.clear();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Turns the counters of Druid stat maps, which start again from zero whenever Druid resets or evicts an entry, into
+ * totals that only ever grow.
+ * <p>
+ * Each raw entry (for example a pool and SQL pair) carries the values it had before every reset forward, and every read
+ * adds the increase of each raw entry since the previous read to the total of the identity it is exported under, such
+ * as its SQL fingerprint or the {@code __other__} series of its pool. Totals are therefore never lowered by a reset, by
+ * the eviction of a raw entry or by a raw entry moving to another identity. An identity no raw entry was read for during
+ * the TTL is dropped, as is a raw entry missing from the reads for the TTL.
+ * <p>
+ * Callers must hold the accumulator's monitor across reading the stat maps and {@link #observe observing} them, so that
+ * reads are observed in the order they were taken.
+ */
+final class CounterAccumulator {
+
+    private final String[] labelKeys;
+    private final String[] counterKeys;
+    private final Map<List<Object>, RawEntry> rawEntries = new HashMap<>();
+    private final Map<List<Object>, Total> totals = new LinkedHashMap<>();
+
+    private final long ttlNanos;
+    private long generation;
+
+    CounterAccumulator(String[] labelKeys, String[] counterKeys, long ttlNanos) {
+        this.labelKeys = labelKeys;
+        this.counterKeys = counterKeys;
+        this.ttlNanos = ttlNanos;
+    }
+
+    /**
+     * Observes one complete read of the stat maps, exporting each entry under its own label values, and returns the
+     * totals as maps holding the label keys and the counters.
+     */
+    synchronized List<Map<String, Object>> observe(List<Map<String, Object>> list) {
+        return observe(list, this::labels);
+    }
+
+    /**
+     * Observes one complete read of the stat maps, adding the increase of each entry to the total of the label values
+     * {@code identity} maps it to, and returns the totals as maps holding the label keys and the counters. A raw entry
+     * whose counters went down since the previous read, or which was missing from it, is taken to have been reset.
+     */
+    synchronized List<Map<String, Object>> observe(List<Map<String, Object>> list, Function<Map<String, Object>, Object[]> identity) {
+        long now = System.nanoTime();
+        long current = ++generation;
+        long[] increase = new long[counterKeys.length];
+        for (Map<String, Object> m : list) {
+            List<Object> rawKey = Arrays.asList(labels(m));
+            RawEntry entry = rawEntries.get(rawKey);
+            if (entry == null) {
+                entry = new RawEntry(counterKeys.length);
+                rawEntries.put(rawKey, entry);
+            }
+            entry.observe(m, current, now, increase);
+
+            Object[] labels = identity.apply(m);
+            List<Object> key = Arrays.asList(labels);
+            Total total = totals.get(key);
+            if (total == null) {
+                total = new Total(labels, counterKeys.length);
+                totals.put(key, total);
+            }
+            total.add(increase, now);
+        }
+
+        for (Iterator<RawEntry> it = rawEntries.values().iterator(); it.hasNext(); ) {
+            RawEntry entry = it.next();
+            if (entry.generation != current) {
+                entry.fold();
+                if (now - entry.seenNanos > ttlNanos) {
+                    it.remove();
+                }
+            }
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>(totals.size());
+        for (Iterator<Total> it = totals.values().iterator(); it.hasNext(); ) {
+            Total total = it.next();
+            if (now - total.seenNanos > ttlNanos) {
+                it.remove();
+                continue;
+            }
+            result.add(total.toMap());
+        }
+        return result;
+    }
+
+    /**
+     * Whether {@code labels} currently has a total, which lets callers keep exporting an identity under the same labels
+     * once it has been given its own series.
+     */
+    synchronized boolean contains(Object... labels) {
+        return totals.containsKey(Arrays.asList(labels));
+    }
+
+    /**
+     * Carries the last observed values of every raw entry forward, to be called right after the underlying stats were
+     * reset so that the next read is counted from zero.
+     */
+    synchronized void fold() {
+        for (RawEntry entry : rawEntries.values()) {
+            entry.fold();
+        }
+    }
+
+    private Object[] labels(Map<String, Object> m) {
+        Object[] labels = new Object[labelKeys.length];
+        for (int i = 0; i < labelKeys.length; i++) {
+            labels[i] = m.get(labelKeys[i]);
+        }
+        return labels;
+    }
+
+    private final class RawEntry {
+        private final long[] last;
+        private long generation;
+        private long seenNanos;
+
+        private RawEntry(int counters) {
+            this.last = new long[counters];
+        }
+
+        /**
+         * Records the values of {@code m} and stores in {@code increase} how much each counter grew since the previous
+         * read, counting from zero after a reset.
+         */
+        private void observe(Map<String, Object> m, long generation, long now, long[] increase) {
+            boolean reset = false;
+            for (int i = 0; i < last.length; i++) {
+                increase[i] = SqlStats.longValue(m, counterKeys[i]);
+                reset |= increase[i] < last[i];
+            }
+            for (int i = 0; i < last.length; i++) {
+                long raw = increase[i];
+                increase[i] = reset ? raw : raw - last[i];
+                last[i] = raw;
+            }
+            this.generation = generation;
+            this.seenNanos = now;
+        }
+
+        private void fold() {
+            Arrays.fill(last, 0);
+        }
+    }
+
+    private final class Total {
+        private final Object[] labels;
+        private final long[] values;
+        private long seenNanos;
+
+        private Total(Object[] labels, int counters) {
+            this.labels = labels;
+            this.values = new long[counters];
+        }
+
+        private void add(long[] increase, long now) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] += increase[i];
+            }
+            this.seenNanos = now;
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            for (int i = 0; i < labelKeys.length; i++) {
+                map.put(labelKeys[i], labels[i]);
+            }
+            for (int i = 0; i < counterKeys.length; i++) {
+                map.put(counterKeys[i], values[i]);
+            }
+            return map;
+        }
+    }
+}
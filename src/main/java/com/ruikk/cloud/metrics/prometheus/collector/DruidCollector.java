@@ -26,17 +26,29 @@ package com.ruikk.cloud.metrics.prometheus.collector;
 import com.alibaba.druid.stat.DruidDataSourceStatManager;
 import com.alibaba.druid.stat.DruidStatManagerFacade;
 import com.alibaba.druid.support.http.stat.WebAppStatManager;
+import com.alibaba.druid.util.DruidDataSourceUtils;
+import com.ruikk.cloud.metrics.prometheus.filter.BucketCounter;
+import com.ruikk.cloud.metrics.prometheus.filter.DruidFilterMetrics;
+import com.ruikk.cloud.metrics.prometheus.filter.DruidPoolRecorder;
+import com.ruikk.cloud.metrics.prometheus.sampler.PoolSaturationSampler;
 import io.prometheus.client.Collector;
-import io.prometheus.client.GaugeMetricFamily;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.function.BiFunction;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-public class DruidCollector extends Collector {
+public class DruidCollector extends Collector implements AutoCloseable {
 
     private final static String[] DRUID_METRICS_NAMES = {
             "WaitThreadCount", "NotEmptyWaitCount", "NotEmptyWaitMillis", "PoolingCount", "PoolingPeak", "ActiveCount",
@@ -56,16 +68,41 @@ public class DruidCollector extends Collector {
 
     private final static String[] DRUID_METRICS_URI_NAMES = {"RequestCount", "RequestTimeMillisMax", "RequestTimeMillis", "RunningCount", "ConcurrentMax", "JdbcExecuteTimeMillis", "JdbcExecuteCount", "JdbcExecuteErrorCount"};
 
+    private final static String[] DRUID_METRICS_SQL_COUNTER_NAMES = {"ExecuteCount", "FetchRowCount", "TotalTime", "ErrorCount"};
+
     private final static String[] DRUID_METRICS_URI_HISTOGRAM_NAMES = {"Histogram"};
 
+    private final static String[] DRUID_METRICS_URI_COUNTER_NAMES = {"RequestCount", "RequestTimeMillis", "JdbcExecuteTimeMillis", "JdbcExecuteCount", "JdbcExecuteErrorCount"};
+
+    private final static String[] DRUID_METRICS_FILTER_NAMES = {"ConnectionAcquireCount", "ConnectionAcquireErrorCount", "ConnectionReleaseCount", "StatementExecuteCount", "StatementErrorCount", "StatementRunningCount"};
+
+    private final static List<ToLongFunction<DruidPoolRecorder>> DRUID_METRICS_FILTER_FUNCTIONS = Arrays.asList(
+            DruidPoolRecorder::getAcquireCount, DruidPoolRecorder::getAcquireErrorCount, DruidPoolRecorder::getReleaseCount,
+            DruidPoolRecorder::getExecuteCount, DruidPoolRecorder::getExecuteErrorCount, DruidPoolRecorder::getRunningCount);
+
+    private final static String[] DRUID_METRICS_FILTER_HISTOGRAM_NAMES = {"ConnectionAcquireTime", "ConnectionHoldTime", "StatementExecuteTime"};
+
+    private final static List<Function<DruidPoolRecorder, BucketCounter>> DRUID_METRICS_FILTER_HISTOGRAM_FUNCTIONS = Arrays.asList(
+            DruidPoolRecorder::getAcquireTime, DruidPoolRecorder::getHoldTime, DruidPoolRecorder::getExecuteTime);
+
     private final static String SQL_NAME_LAST_ERROR_TIME = "LastErrorTime";
     private static final String NAME_POOL = "pool";
     private static final String NAME_SQL = "sql";
+    private static final String NAME_SQL_ID = "sql_id";
     private static final String NAME_LE = "le";
     private static final String NAME_CLASS = "class";
     private static final String NAME_MESSAGE = "message";
     private static final String NAME_URI = "uri";
+    private static final String NAME_SECTION = "section";
+    private static final String NAME_FAMILY = "family";
+    private static final String NAME_STATE = "state";
+    private static final String NAME_CACHE = "cache";
     
+    private static final String SECTION_POOL = "pool";
+    private static final String SECTION_SQL = "sql";
+    private static final String SECTION_URI = "uri";
+    private static final String SECTION_FILTER = "filter";
+
     private static final String KEY_NAME = "Name";
     private static final String KEY_SQL = "SQL";
     private static final String KEY_URI = "URI";
@@ -75,35 +112,143 @@ public class DruidCollector extends Collector {
     private static final String LABEL_PRE_DRUID = "druid_";
     private static final String LABEL_PRE_SQL = "druid_sql_";
     private static final String LABEL_PRE_URI = "druid_uri_";
+    private static final String LABEL_PRE_FILTER = "druid_filter_";
     private static final String LABEL_SUF_BUCKET = "_bucket";
+    private static final String LABEL_SUF_TOTAL = "_total";
 
     private static final String HELP_PRE_DRUID = "Druid ";
     private static final String HELP_PRE_SQL = "Druid SQL ";
     private static final String HELP_PRE_URI = "Druid URI ";
+    private static final String HELP_PRE_FILTER = "Druid Filter ";
+    private static final String HELP_SUF_TOTAL = " accumulated across stat resets";
 
-    private final String[] BUCKETS = {"1ms", "10ms", "100ms", "1s", "10s", "100s", "Inf"};
+    private final static String[] BUCKETS = {"1ms", "10ms", "100ms", "1s", "10s", "100s", "Inf"};
 
     private final static Pattern PATTERN_CAMEL = Pattern.compile("(?<=[a-z])(?=[A-Z])");
     private final static Pattern PATTERN_SPACE = Pattern.compile("\\s+");
 
+    private final static String[] FAMILY_NAMES = familyNames(LABEL_PRE_DRUID, DRUID_METRICS_NAMES, "");
+    private final static String[] FAMILY_HELPS = familyHelps(HELP_PRE_DRUID, DRUID_METRICS_NAMES);
+    private final static String[] FAMILY_HISTOGRAM_NAMES = familyNames(LABEL_PRE_DRUID, DRUID_METRICS_HISTOGRAM_NAMES, LABEL_SUF_BUCKET);
+    private final static String[] FAMILY_HISTOGRAM_HELPS = familyHelps(HELP_PRE_DRUID, DRUID_METRICS_HISTOGRAM_NAMES);
+    private final static String[] FAMILY_SQL_NAMES = familyNames(LABEL_PRE_SQL, DRUID_METRICS_SQL_NAMES, "");
+    private final static String[] FAMILY_SQL_HELPS = familyHelps(HELP_PRE_SQL, DRUID_METRICS_SQL_NAMES);
+    private final static String[] FAMILY_SQL_HISTOGRAM_NAMES = familyNames(LABEL_PRE_SQL, DRUID_METRICS_SQL_HISTOGRAM_NAMES, LABEL_SUF_BUCKET);
+    private final static String[] FAMILY_SQL_HISTOGRAM_HELPS = familyHelps(HELP_PRE_SQL, DRUID_METRICS_SQL_HISTOGRAM_NAMES);
+    private final static String[] FAMILY_SQL_COUNTER_NAMES = familyNames(LABEL_PRE_SQL, DRUID_METRICS_SQL_COUNTER_NAMES, LABEL_SUF_TOTAL);
+    private final static String[] FAMILY_SQL_COUNTER_HELPS = Stream.of(familyHelps(HELP_PRE_SQL, DRUID_METRICS_SQL_COUNTER_NAMES)).map(help -> help + HELP_SUF_TOTAL).toArray(String[]::new);
+    private final static String FAMILY_SQL_ERROR_NAME = LABEL_PRE_SQL + camelToSnake(SQL_NAME_LAST_ERROR_TIME);
+    private final static String FAMILY_SQL_ERROR_HELP = HELP_PRE_SQL + SQL_NAME_LAST_ERROR_TIME;
+    private final static String FAMILY_SQL_INFO_NAME = LABEL_PRE_SQL + "info";
+    private final static String FAMILY_SQL_INFO_HELP = HELP_PRE_SQL + "text of each sql_id";
+    private final static String[] FAMILY_URI_NAMES = familyNames(LABEL_PRE_URI, DRUID_METRICS_URI_NAMES, "");
+    private final static String[] FAMILY_URI_HELPS = familyHelps(HELP_PRE_URI, DRUID_METRICS_URI_NAMES);
+    private final static String[] FAMILY_URI_HISTOGRAM_NAMES = familyNames(LABEL_PRE_URI, DRUID_METRICS_URI_HISTOGRAM_NAMES, LABEL_SUF_BUCKET);
+    private final static String[] FAMILY_URI_HISTOGRAM_HELPS = familyHelps(HELP_PRE_URI, DRUID_METRICS_URI_HISTOGRAM_NAMES);
+    private final static String[] FAMILY_URI_COUNTER_NAMES = familyNames(LABEL_PRE_URI, DRUID_METRICS_URI_COUNTER_NAMES, LABEL_SUF_TOTAL);
+    private final static String[] FAMILY_URI_COUNTER_HELPS = Stream.of(familyHelps(HELP_PRE_URI, DRUID_METRICS_URI_COUNTER_NAMES)).map(help -> help + HELP_SUF_TOTAL).toArray(String[]::new);
+    private final static String[] FAMILY_FILTER_NAMES = familyNames(LABEL_PRE_FILTER, DRUID_METRICS_FILTER_NAMES, "");
+    private final static String[] FAMILY_FILTER_HELPS = familyHelps(HELP_PRE_FILTER, DRUID_METRICS_FILTER_NAMES);
+    private final static String[] FAMILY_FILTER_HISTOGRAM_NAMES = familyNames(LABEL_PRE_FILTER, DRUID_METRICS_FILTER_HISTOGRAM_NAMES, LABEL_SUF_BUCKET);
+    private final static String[] FAMILY_FILTER_HISTOGRAM_HELPS = familyHelps(HELP_PRE_FILTER, DRUID_METRICS_FILTER_HISTOGRAM_NAMES);
+
+    private final static String[][] FAMILY_SATURATION_NAMES = Stream.of(PoolSaturationSampler.FIELDS)
+            .map(field -> Stream.of(PoolSaturationSampler.STATISTICS).map(stat -> LABEL_PRE_DRUID + camelToSnake(field) + "_" + stat.toLowerCase()).toArray(String[]::new))
+            .toArray(String[][]::new);
+    private final static String[][] FAMILY_SATURATION_HELPS = Stream.of(PoolSaturationSampler.FIELDS)
+            .map(field -> Stream.of(PoolSaturationSampler.STATISTICS).map(stat -> HELP_PRE_DRUID + field + " " + stat + " over the sampling window").toArray(String[]::new))
+            .toArray(String[][]::new);
+
+    private final static String FAMILY_STALE_NAME = "druid_collect_stale";
+    private final static String FAMILY_STALE_HELP = "Druid collection section served from previous values after missing its deadline";
+
+    private final static String FAMILY_EXPORTER_DURATION_NAME = "druid_exporter_collect_duration_seconds";
+    private final static String FAMILY_EXPORTER_DURATION_HELP = "Druid exporter time spent reading each section during the last scrape";
+    private final static String FAMILY_EXPORTER_SERIES_NAME = "druid_exporter_series";
+    private final static String FAMILY_EXPORTER_SERIES_HELP = "Druid exporter series written per family during the last scrape";
+    private final static String FAMILY_EXPORTER_SQL_ENTRIES_NAME = "druid_exporter_sql_entries";
+    private final static String FAMILY_EXPORTER_SQL_ENTRIES_HELP = "Druid exporter SQL stat entries read and emitted during the last scrape";
+    private final static String FAMILY_EXPORTER_URI_ENTRIES_NAME = "druid_exporter_uri_entries";
+    private final static String FAMILY_EXPORTER_URI_ENTRIES_HELP = "Druid exporter URI stat entries read and emitted during the last scrape";
+    private final static String FAMILY_EXPORTER_ALLOCATED_NAME = "druid_exporter_allocated_bytes";
+    private final static String FAMILY_EXPORTER_ALLOCATED_HELP = "Druid exporter bytes allocated by the scrape thread during the last scrape";
+    private final static String FAMILY_EXPORTER_CACHE_HIT_NAME = "druid_exporter_cache_hit_total";
+    private final static String FAMILY_EXPORTER_CACHE_HIT_HELP = "Druid exporter cache lookups answered from the cache";
+    private final static String FAMILY_EXPORTER_CACHE_MISS_NAME = "druid_exporter_cache_miss_total";
+    private final static String FAMILY_EXPORTER_CACHE_MISS_HELP = "Druid exporter cache lookups that had to compute the value";
+
+    private final static String EXPORTER_SECTION_TOTAL = "total";
+    private final static String EXPORTER_STATE_SEEN = "seen";
+    private final static String EXPORTER_STATE_EMITTED = "emitted";
+
+    private final static Map<String, String> FAMILY_SECTIONS = familySections();
+
+    /**
+     * Sections the families are grouped in, see {@link #sectionOf(String)}.
+     */
+    public static final List<String> SECTIONS = Collections.unmodifiableList(Arrays.asList(SECTION_POOL, SECTION_SQL, SECTION_URI, SECTION_FILTER));
+
+    private final static int FAMILY_COUNT = DRUID_METRICS_NAMES.length + DRUID_METRICS_HISTOGRAM_NAMES.length +
+            DRUID_METRICS_SQL_NAMES.length + DRUID_METRICS_SQL_HISTOGRAM_NAMES.length + 1 + DRUID_METRICS_SQL_COUNTER_NAMES.length + 1 +
+            DRUID_METRICS_URI_NAMES.length + DRUID_METRICS_URI_HISTOGRAM_NAMES.length + DRUID_METRICS_URI_COUNTER_NAMES.length +
+            DRUID_METRICS_FILTER_NAMES.length + DRUID_METRICS_FILTER_HISTOGRAM_NAMES.length + 1;
+
+    public static final int DEFAULT_LABEL_CACHE_SIZE = 10000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DruidCollector.class);
+
     private final List<String> LABEL_NAMES;
     private final List<String> LABEL_HISTOGRAM_NAMES;
     private final List<String> LABEL_SQL_NAMES;
     private final List<String> LABEL_SQL_HISTOGRAM_NAMES;
     private final List<String> LABEL_SQL_ERROR_NAMES;
+    private final List<String> LABEL_SQL_ID_NAMES;
+    private final List<String> LABEL_SQL_ID_HISTOGRAM_NAMES;
+    private final List<String> LABEL_SQL_ID_ERROR_NAMES;
+    private final List<String> LABEL_SQL_INFO_NAMES;
     private final List<String> LABEL_URI_NAMES;
     private final List<String> LABEL_URI_HISTOGRAM_NAMES;
+    private final List<String> LABEL_STALE_NAMES;
+    private final List<String> LABEL_EXPORTER_SECTION_NAMES;
+    private final List<String> LABEL_EXPORTER_FAMILY_NAMES;
+    private final List<String> LABEL_EXPORTER_STATE_NAMES;
+    private final List<String> LABEL_EXPORTER_CACHE_NAMES;
 
-    private final Function<Map<String, Object>, List<String>> LABEL_VALUES_FUNCTION;
-    private final BiFunction<Map<String, Object>, String, List<String>> LABEL_HISTOGRAM_VALUES_FUNCTION;
-    private final Function<Map<String, Object>, List<String>> LABEL_SQL_VALUES_FUNCTION;
+    private final Function<Map<String, Object>, SeriesLabels> LABEL_VALUES_FUNCTION;
+    private final Function<Map<String, Object>, SeriesLabels> LABEL_SQL_VALUES_FUNCTION;
     private final Function<Map<String, Object>, List<String>> LABEL_SQL_ERROR_VALUES_FUNCTION;
-    private final BiFunction<Map<String, Object>, String, List<String>> LABEL_SQL_HISTOGRAM_VALUES_FUNCTION;
-    private final Function<Map<String, Object>, List<String>> LABEL_URI_VALUES_FUNCTION;
-    private final BiFunction<Map<String, Object>, String, List<String>> LABEL_URI_HISTOGRAM_VALUES_FUNCTION;
+    private final Function<Map<String, Object>, SeriesLabels> LABEL_URI_VALUES_FUNCTION;
+
+    private final List<String> tagNames;
+    private final List<String> tagValues;
+
+    private BoundedCache<String, SeriesLabels> poolLabelCache;
+    private BoundedCache<SqlKey, SeriesLabels> sqlLabelCache;
+    private BoundedCache<String, SeriesLabels> uriLabelCache;
+    private BoundedCache<String, String> fingerprintCache;
+    private BoundedCache<String, List<String>> sqlInfoCache;
 
     private boolean enableSql;
     private boolean enableUri;
+    private boolean enableFilter;
+    private boolean enableExporterMetrics;
+
+    private ParallelSections parallelSections;
+    private PoolSaturationSampler saturationSampler;
+
+    private IncrementalSamplesSink incrementalSink;
+
+    private CounterAccumulator sqlTotals;
+    private CounterAccumulator uriTotals;
+    private ScheduledExecutorService statResetScheduler;
+
+    private boolean sqlFingerprint;
+    private int sqlTopK;
+    private String sqlRankBy = "TotalTime";
+    private boolean sqlIdLabel;
+    private int sqlInfoMaxLength;
+    private long sqlInfoIntervalNanos;
+    private final AtomicLong lastSqlInfoNanos = new AtomicLong();
 
     private static String reduceSpace (String str){
         return PATTERN_SPACE.matcher(str).replaceAll(" ");
@@ -113,6 +258,45 @@ public class DruidCollector extends Collector {
         return Stream.of(PATTERN_CAMEL.split(str)).filter(s-> s != null && !s.isEmpty()).map(String::toLowerCase).collect(Collectors.joining("_"));
     }
 
+    private static String[] familyNames(String prefix, String[] metrics, String suffix) {
+        return Stream.of(metrics).map(metric -> prefix + camelToSnake(metric) + suffix).toArray(String[]::new);
+    }
+
+    private static String[] familyHelps(String prefix, String[] metrics) {
+        return Stream.of(metrics).map(metric -> prefix + metric).toArray(String[]::new);
+    }
+
+    private static Map<String, String> familySections() {
+        Map<String, String> sections = new HashMap<>();
+        Stream.of(FAMILY_NAMES, FAMILY_HISTOGRAM_NAMES).flatMap(Stream::of).forEach(family -> sections.put(family, SECTION_POOL));
+        Stream.of(FAMILY_SATURATION_NAMES).flatMap(Stream::of).forEach(family -> sections.put(family, SECTION_POOL));
+        Stream.of(FAMILY_SQL_NAMES, FAMILY_SQL_HISTOGRAM_NAMES, FAMILY_SQL_COUNTER_NAMES, new String[]{FAMILY_SQL_ERROR_NAME, FAMILY_SQL_INFO_NAME})
+                .flatMap(Stream::of).forEach(family -> sections.put(family, SECTION_SQL));
+        Stream.of(FAMILY_URI_NAMES, FAMILY_URI_HISTOGRAM_NAMES, FAMILY_URI_COUNTER_NAMES).flatMap(Stream::of).forEach(family -> sections.put(family, SECTION_URI));
+        Stream.of(FAMILY_FILTER_NAMES, FAMILY_FILTER_HISTOGRAM_NAMES).flatMap(Stream::of).forEach(family -> sections.put(family, SECTION_FILTER));
+        return Collections.unmodifiableMap(sections);
+    }
+
+    /**
+     * Section of {@link #SECTIONS} that {@code family} is read in, or {@code null} for families describing the scrape
+     * itself, such as {@code druid_collect_stale} and {@code druid_exporter_*}.
+     */
+    public static String sectionOf(String family) {
+        return FAMILY_SECTIONS.get(family);
+    }
+
+    private static boolean acceptsSection(Predicate<String> familyFilter, String section) {
+        if (familyFilter == null) {
+            return true;
+        }
+        for (Map.Entry<String, String> entry : FAMILY_SECTIONS.entrySet()) {
+            if (entry.getValue().equals(section) && familyFilter.test(entry.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public DruidCollector(Map<String, String> tags, boolean enableSql, boolean enableUri) {
         this.enableSql = enableSql;
         this.enableUri = enableUri;
@@ -121,6 +305,8 @@ public class DruidCollector extends Collector {
 
         List<String> tagKey = tagEntry.stream().map(Map.Entry::getKey).collect(Collectors.toList());
         List<String> tagVal = tagEntry.stream().map(Map.Entry::getValue).collect(Collectors.toList());
+        this.tagNames = tagKey;
+        this.tagValues = tagVal;
 
         LABEL_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_POOL)).collect(Collectors.toList());
         LABEL_HISTOGRAM_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_POOL, NAME_LE)).collect(Collectors.toList());
@@ -128,60 +314,232 @@ public class DruidCollector extends Collector {
         LABEL_SQL_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_POOL, NAME_SQL)).collect(Collectors.toList());
         LABEL_SQL_HISTOGRAM_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_POOL, NAME_SQL, NAME_LE)).collect(Collectors.toList());
         LABEL_SQL_ERROR_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_POOL, NAME_SQL, NAME_CLASS, NAME_MESSAGE)).collect(Collectors.toList());
+        LABEL_SQL_ID_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_POOL, NAME_SQL_ID)).collect(Collectors.toList());
+        LABEL_SQL_ID_HISTOGRAM_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_POOL, NAME_SQL_ID, NAME_LE)).collect(Collectors.toList());
+        LABEL_SQL_ID_ERROR_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_POOL, NAME_SQL_ID, NAME_CLASS, NAME_MESSAGE)).collect(Collectors.toList());
+        LABEL_SQL_INFO_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_SQL_ID, NAME_SQL)).collect(Collectors.toList());
 
         LABEL_URI_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_URI)).collect(Collectors.toList());
         LABEL_URI_HISTOGRAM_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_URI, NAME_LE)).collect(Collectors.toList());
 
+        LABEL_STALE_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_SECTION, NAME_POOL)).collect(Collectors.toList());
+
+        LABEL_EXPORTER_SECTION_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_SECTION)).collect(Collectors.toList());
+        LABEL_EXPORTER_FAMILY_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_FAMILY)).collect(Collectors.toList());
+        LABEL_EXPORTER_STATE_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_STATE)).collect(Collectors.toList());
+        LABEL_EXPORTER_CACHE_NAMES = Stream.concat(tagKey.stream(), Stream.of(NAME_CACHE)).collect(Collectors.toList());
+
+        setLabelCacheSize(DEFAULT_LABEL_CACHE_SIZE);
+
         // func
-        LABEL_VALUES_FUNCTION = (map) -> Stream.concat(tagVal.stream(), Stream.of((String) map.get(KEY_NAME))).collect(Collectors.toList());
-        LABEL_HISTOGRAM_VALUES_FUNCTION = (map, le) -> Stream.concat(tagVal.stream(), Stream.of((String) map.get(KEY_NAME), le)).collect(Collectors.toList());
+        LABEL_VALUES_FUNCTION = (map) -> poolLabels((String) map.get(KEY_NAME));
 
-        LABEL_SQL_VALUES_FUNCTION = (map) -> Stream.concat(tagVal.stream(), Stream.of((String) map.get(KEY_NAME), reduceSpace((String) map.get(KEY_SQL)))).collect(Collectors.toList());
-        LABEL_SQL_HISTOGRAM_VALUES_FUNCTION = (map, le) -> Stream.concat(tagVal.stream(), Stream.of((String) map.get(KEY_NAME), reduceSpace((String) map.get(KEY_SQL)), le)).collect(Collectors.toList());
-        LABEL_SQL_ERROR_VALUES_FUNCTION = (map) -> Stream.concat(tagVal.stream(), Stream.of((String) map.get(KEY_NAME), reduceSpace((String) map.get(KEY_SQL)), (String) map.get(KEY_ERR_CLS), (String) map.get(KEY_ERR_MSG))).collect(Collectors.toList());
+        LABEL_SQL_VALUES_FUNCTION = (map) -> sqlLabelCache.get(new SqlKey((String) map.get(KEY_NAME), (String) map.get(KEY_SQL)),
+                key -> new SeriesLabels(tagVal, new String[]{key.pool, sqlIdLabel ? sqlId(key.sql) : reduceSpace(key.sql)}, BUCKETS));
+        LABEL_SQL_ERROR_VALUES_FUNCTION = (map) -> {
+            List<String> sqlValues = LABEL_SQL_VALUES_FUNCTION.apply(map).values();
+            List<String> values = new ArrayList<>(sqlValues.size() + 2);
+            values.addAll(sqlValues);
+            values.add((String) map.get(KEY_ERR_CLS));
+            values.add((String) map.get(KEY_ERR_MSG));
+            return values;
+        };
 
-        LABEL_URI_VALUES_FUNCTION = (map) -> Stream.concat(tagVal.stream(), Stream.of((String) map.get(KEY_URI))).collect(Collectors.toList());
-        LABEL_URI_HISTOGRAM_VALUES_FUNCTION = (map, le) -> Stream.concat(tagVal.stream(), Stream.of((String) map.get(KEY_URI), le)).collect(Collectors.toList());
+        LABEL_URI_VALUES_FUNCTION = (map) -> uriLabelCache.get((String) map.get(KEY_URI),
+                uri -> new SeriesLabels(tagVal, new String[]{uri}, BUCKETS));
     }
 
     @Override
     public List<MetricFamilySamples> collect() {
+        IncrementalSamplesSink incremental = incrementalSink;
+        if (incremental != null) {
+            synchronized (incremental) {
+                incremental.begin(FAMILY_COUNT);
+                collect(incremental);
+                return incremental.finish();
+            }
+        }
+        MetricFamilySamplesSink sink = new MetricFamilySamplesSink(FAMILY_COUNT);
+        collect(sink);
+        return sink.getFamilies();
+    }
 
-        DruidStatManagerFacade druidStatManagerFacade = DruidStatManagerFacade.getInstance();
-        List<Map<String, Object>> statList = druidStatManagerFacade.getDataSourceStatDataList();
+    /**
+     * Writes every family to {@code sink}, in the same order as {@link #collect()} returns them.
+     */
+    public void collect(SampleSink output) {
+        collect(output, null);
+    }
+
+    /**
+     * Writes the families whose name is accepted by {@code familyFilter} to {@code sink}, or every family when it is
+     * {@code null}. The pool, SQL, URI and filter stats are only read when at least one family of their
+     * {@linkplain #sectionOf section} is accepted.
+     */
+    public void collect(SampleSink output, Predicate<String> familyFilter) {
+        ScrapeStats stats = enableExporterMetrics ? new ScrapeStats(output, FAMILY_COUNT) : null;
+        SampleSink filtered = familyFilter != null ? new FilteringSink(output, familyFilter) : output;
+        SampleSink sink = stats == null ? filtered : familyFilter != null ? new FilteringSink(stats, familyFilter) : stats;
+
+        boolean readPool = acceptsSection(familyFilter, SECTION_POOL);
+        boolean readSql = enableSql && acceptsSection(familyFilter, SECTION_SQL);
+        boolean readUri = enableUri && acceptsSection(familyFilter, SECTION_URI);
+        boolean readFilter = enableFilter && acceptsSection(familyFilter, SECTION_FILTER);
+
+        ParallelSections sections = parallelSections;
+        ParallelSections.Batch batch = sections != null ? submitSections(sections, readPool, readSql, readUri) : null;
+
+        long mark = System.nanoTime();
+        List<Map<String, Object>> statList = Collections.emptyList();
+        if (readPool) {
+            statList = batch != null ? batch.await(SECTION_POOL) : DruidStatManagerFacade.getInstance().getDataSourceStatDataList();
+        }
+        mark = section(stats, ScrapeStats.SECTION_POOL, mark);
+
+        CounterAccumulator sqlTotals = this.sqlTotals;
+        List<Map<String, Object>> sqlStatData;
+        List<Map<String, Object>> sqlList;
+        List<Map<String, Object>> sqlTotalList = Collections.emptyList();
+        if (!readSql) {
+            sqlStatData = Collections.emptyList();
+            sqlList = sqlStatData;
+        } else if (sqlTotals != null) {
+            synchronized (sqlTotals) {
+                sqlStatData = getSqlStatData();
+                sqlList = processSqlStatData(sqlStatData);
+                sqlTotalList = observeSqlTotals(sqlTotals, sqlStatData, sqlList);
+            }
+        } else {
+            sqlStatData = batch != null ? batch.await(SECTION_SQL) : getSqlStatData();
+            sqlList = processSqlStatData(sqlStatData);
+        }
+        mark = section(stats, ScrapeStats.SECTION_SQL, mark);
+
+        CounterAccumulator uriTotals = this.uriTotals;
+        List<Map<String, Object>> uriList;
+        List<Map<String, Object>> uriTotalList = Collections.emptyList();
+        if (!readUri) {
+            uriList = Collections.emptyList();
+        } else if (uriTotals != null) {
+            synchronized (uriTotals) {
+                uriList = getUriStatData();
+                uriTotalList = uriTotals.observe(uriList);
+            }
+        } else {
+            uriList = batch != null ? batch.await(SECTION_URI) : getUriStatData();
+        }
+        section(stats, ScrapeStats.SECTION_URI, mark);
 
-        List<Map<String, Object>> sqlList = getSqlStatData();
-        List<Map<String, Object>> uriList = getUriStatData();
+        List<ParallelSections.Task> tasks = null;
+        if (batch != null) {
+            batch.finish();
+            tasks = batch.getTasks();
+        }
+        if (stats != null) {
+            stats.sqlSeen = sqlStatData.size();
+            stats.sqlEmitted = sqlList.size();
+            stats.uriSeen = uriList.size();
+            stats.uriEmitted = uriList.size();
+        }
+
+        if (readPool) {
+            for (int i = 0; i < DRUID_METRICS_NAMES.length; i++) {
+                String name = DRUID_METRICS_NAMES[i];
+                writeGauge(sink, FAMILY_NAMES[i], FAMILY_HELPS[i], LABEL_NAMES, statList, LABEL_VALUES_FUNCTION, m -> (Number) m.get(name));
+            }
+            for (int i = 0; i < DRUID_METRICS_HISTOGRAM_NAMES.length; i++) {
+                String name = DRUID_METRICS_HISTOGRAM_NAMES[i];
+                writeHistogram(sink, FAMILY_HISTOGRAM_NAMES[i], FAMILY_HISTOGRAM_HELPS[i], LABEL_HISTOGRAM_NAMES, statList, LABEL_VALUES_FUNCTION, m -> (long[]) m.get(name));
+            }
 
-        int initialCapacity =
-                statList.size() * (DRUID_METRICS_NAMES.length + DRUID_METRICS_HISTOGRAM_NAMES.length) +
-                        sqlList.size() * (DRUID_METRICS_SQL_NAMES.length + DRUID_METRICS_SQL_HISTOGRAM_NAMES.length + 1) +
-                        uriList.size() * (DRUID_METRICS_URI_NAMES.length + DRUID_METRICS_URI_HISTOGRAM_NAMES.length);
+            PoolSaturationSampler sampler = saturationSampler;
+            if (sampler != null) {
+                writeSaturationGauges(sink, sampler.summarize());
+            }
+        }
 
-        List<MetricFamilySamples> list = new ArrayList<>(initialCapacity);
+        if(readSql) {
+            boolean sqlId = sqlIdLabel;
+            List<String> sqlLabelNames = sqlId ? LABEL_SQL_ID_NAMES : LABEL_SQL_NAMES;
+            List<String> sqlHistogramLabelNames = sqlId ? LABEL_SQL_ID_HISTOGRAM_NAMES : LABEL_SQL_HISTOGRAM_NAMES;
+            for (int i = 0; i < DRUID_METRICS_SQL_NAMES.length; i++) {
+                String name = DRUID_METRICS_SQL_NAMES[i];
+                writeGauge(sink, FAMILY_SQL_NAMES[i], FAMILY_SQL_HELPS[i], sqlLabelNames, sqlList, LABEL_SQL_VALUES_FUNCTION, m -> (Number) m.get(name));
+            }
+            for (int i = 0; i < DRUID_METRICS_SQL_HISTOGRAM_NAMES.length; i++) {
+                String name = DRUID_METRICS_SQL_HISTOGRAM_NAMES[i];
+                writeHistogram(sink, FAMILY_SQL_HISTOGRAM_NAMES[i], FAMILY_SQL_HISTOGRAM_HELPS[i], sqlHistogramLabelNames, sqlList, LABEL_SQL_VALUES_FUNCTION, m -> (long[]) m.get(name));
+            }
 
-        Stream.of(DRUID_METRICS_NAMES)
-                .map(name -> createGauge(name, statList, m -> (Number) m.get(name))).forEach(list::add);
-        Stream.of(DRUID_METRICS_HISTOGRAM_NAMES)
-                .map(name -> createHistogram(name, statList, m -> (long[]) m.get(name))).forEach(list::add);
+            writeSqlErrorGauge(sink, sqlId ? LABEL_SQL_ID_ERROR_NAMES : LABEL_SQL_ERROR_NAMES, sqlList, m -> (Date) m.get(SQL_NAME_LAST_ERROR_TIME));
 
-        if(enableSql) {
-            Stream.of(DRUID_METRICS_SQL_NAMES)
-                    .map(name -> createSqlGauge(name, sqlList, m -> (Number) m.get(name))).forEach(list::add);
-            Stream.of(DRUID_METRICS_SQL_HISTOGRAM_NAMES)
-                    .map(name -> createSqlHistogram(name, sqlList, m -> (long[]) m.get(name))).forEach(list::add);
+            if (sqlTotals != null) {
+                for (int i = 0; i < DRUID_METRICS_SQL_COUNTER_NAMES.length; i++) {
+                    String name = DRUID_METRICS_SQL_COUNTER_NAMES[i];
+                    writeCounter(sink, FAMILY_SQL_COUNTER_NAMES[i], FAMILY_SQL_COUNTER_HELPS[i], sqlLabelNames, sqlTotalList, LABEL_SQL_VALUES_FUNCTION, m -> (Number) m.get(name));
+                }
+            }
 
-            list.add(createSqlErrorGauge(SQL_NAME_LAST_ERROR_TIME, sqlList, m -> (Date) m.get(SQL_NAME_LAST_ERROR_TIME)));
+            // check the filter first, a scrape that drops the info family must not use up the interval
+            if (sqlId && (familyFilter == null || familyFilter.test(FAMILY_SQL_INFO_NAME)) && sqlInfoDue()) {
+                writeSqlInfo(sink, sqlList, sqlTotalList);
+            }
         }
 
-        if(enableUri) {
-            Stream.of(DRUID_METRICS_URI_NAMES)
-                    .map(name -> createUriGauge(name, uriList, m -> (Number) m.get(name))).forEach(list::add);
-            Stream.of(DRUID_METRICS_URI_HISTOGRAM_NAMES)
-                    .map(name -> createUriHistogram(name, uriList, m -> (long[]) m.get(name))).forEach(list::add);
+        if(readUri) {
+            for (int i = 0; i < DRUID_METRICS_URI_NAMES.length; i++) {
+                String name = DRUID_METRICS_URI_NAMES[i];
+                writeGauge(sink, FAMILY_URI_NAMES[i], FAMILY_URI_HELPS[i], LABEL_URI_NAMES, uriList, LABEL_URI_VALUES_FUNCTION, m -> (Number) m.get(name));
+            }
+            for (int i = 0; i < DRUID_METRICS_URI_HISTOGRAM_NAMES.length; i++) {
+                String name = DRUID_METRICS_URI_HISTOGRAM_NAMES[i];
+                writeHistogram(sink, FAMILY_URI_HISTOGRAM_NAMES[i], FAMILY_URI_HISTOGRAM_HELPS[i], LABEL_URI_HISTOGRAM_NAMES, uriList, LABEL_URI_VALUES_FUNCTION, m -> (long[]) m.get(name));
+            }
+            if (uriTotals != null) {
+                for (int i = 0; i < DRUID_METRICS_URI_COUNTER_NAMES.length; i++) {
+                    String name = DRUID_METRICS_URI_COUNTER_NAMES[i];
+                    writeCounter(sink, FAMILY_URI_COUNTER_NAMES[i], FAMILY_URI_COUNTER_HELPS[i], LABEL_URI_NAMES, uriTotalList, LABEL_URI_VALUES_FUNCTION, m -> (Number) m.get(name));
+                }
+            }
         }
 
-        return list;
+        if(readFilter) {
+            mark = System.nanoTime();
+            List<DruidPoolRecorder> recorders = DruidFilterMetrics.getInstance().getRecorders();
+            for (int i = 0; i < DRUID_METRICS_FILTER_NAMES.length; i++) {
+                writeFilterGauge(sink, FAMILY_FILTER_NAMES[i], FAMILY_FILTER_HELPS[i], recorders, DRUID_METRICS_FILTER_FUNCTIONS.get(i));
+            }
+            for (int i = 0; i < DRUID_METRICS_FILTER_HISTOGRAM_NAMES.length; i++) {
+                writeFilterHistogram(sink, FAMILY_FILTER_HISTOGRAM_NAMES[i], FAMILY_FILTER_HISTOGRAM_HELPS[i], recorders, DRUID_METRICS_FILTER_HISTOGRAM_FUNCTIONS.get(i));
+            }
+            section(stats, ScrapeStats.SECTION_FILTER, mark);
+        }
+
+        if (tasks != null) {
+            writeStaleGauge(sink, tasks);
+        }
+
+        if (stats != null) {
+            writeExporterGauges(filtered, stats);
+        }
+    }
+
+    private static long section(ScrapeStats stats, int section, long mark) {
+        if (stats == null) {
+            return mark;
+        }
+        stats.section(section, mark);
+        return System.nanoTime();
+    }
+
+    private boolean sqlInfoDue() {
+        if (sqlInfoIntervalNanos <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        long last = lastSqlInfoNanos.get();
+        // only the collection that moves the mark forward writes the info family
+        return now - last >= sqlInfoIntervalNanos && lastSqlInfoNanos.compareAndSet(last, now);
     }
 
     private List<Map<String, Object>> getSqlStatData() {
@@ -193,6 +551,73 @@ public class DruidCollector extends Collector {
         return dataSources.stream().flatMap(obj -> druidStatManagerFacade.getSqlStatDataList(obj).stream()).collect(Collectors.toList());
     }
 
+    private List<Map<String, Object>> processSqlStatData(List<Map<String, Object>> sqlList) {
+        if (sqlFingerprint) {
+            sqlList = SqlStats.mergeBy(sqlList, sql -> fingerprintCache.get(sql, SqlFingerprint::fingerprint));
+        }
+        if (sqlTopK > 0) {
+            sqlList = SqlStats.topK(sqlList, sqlTopK, sqlRankBy);
+        }
+        return sqlList;
+    }
+
+    /**
+     * Adds the SQL stats of one read to the {@code _total} counters, which are kept per exported statement: per
+     * fingerprint when fingerprinting, and with top-K, per statement that ranks in {@code sqlList} or already has its
+     * own counters, the other statements of a pool being counted in its {@code __other__} counters.
+     */
+    private List<Map<String, Object>> observeSqlTotals(CounterAccumulator sqlTotals, List<Map<String, Object>> sqlStatData,
+                                                       List<Map<String, Object>> sqlList) {
+        Set<SqlKey> ranked = null;
+        if (sqlTopK > 0) {
+            ranked = new HashSet<>();
+            for (Map<String, Object> m : sqlList) {
+                ranked.add(new SqlKey((String) m.get(KEY_NAME), (String) m.get(KEY_SQL)));
+            }
+        }
+        Set<SqlKey> own = ranked;
+        return sqlTotals.observe(sqlStatData, m -> {
+            String pool = (String) m.get(KEY_NAME);
+            String sql = (String) m.get(KEY_SQL);
+            if (sqlFingerprint) {
+                sql = fingerprintCache.get(sql, SqlFingerprint::fingerprint);
+            }
+            if (own != null && !own.contains(new SqlKey(pool, sql)) && !sqlTotals.contains(pool, sql)) {
+                sql = SqlStats.SQL_OTHER;
+            }
+            return new Object[]{pool, sql};
+        });
+    }
+
+    private ParallelSections.Batch submitSections(ParallelSections sections, boolean readPool, boolean readSql, boolean readUri) {
+        ParallelSections.Batch batch = sections.start();
+        DruidStatManagerFacade druidStatManagerFacade = DruidStatManagerFacade.getInstance();
+
+        List<Object> dataSources = new ArrayList<>(DruidDataSourceStatManager.getInstances().keySet());
+        dataSources.sort(Comparator.comparingLong(DruidDataSourceUtils::getID));
+
+        if (readPool) {
+            batch.include(SECTION_POOL);
+            for (Object dataSource : dataSources) {
+                String key = String.valueOf(DruidDataSourceUtils.getID(dataSource));
+                batch.submit(SECTION_POOL, DruidDataSourceUtils.getName(dataSource), key,
+                        () -> Collections.singletonList(DruidDataSourceUtils.getStatData(dataSource)));
+            }
+        }
+        if (readSql && sqlTotals == null) {
+            batch.include(SECTION_SQL);
+            for (Object dataSource : dataSources) {
+                String key = String.valueOf(DruidDataSourceUtils.getID(dataSource));
+                batch.submit(SECTION_SQL, DruidDataSourceUtils.getName(dataSource), key,
+                        () -> druidStatManagerFacade.getSqlStatDataList(dataSource));
+            }
+        }
+        if (readUri && uriTotals == null) {
+            batch.submit(SECTION_URI, "", "", () -> WebAppStatManager.getInstance().getURIStatData());
+        }
+        return batch;
+    }
+
     private List<Map<String, Object>> getUriStatData() {
         if(!enableUri){
             return Collections.emptyList();
@@ -201,69 +626,262 @@ public class DruidCollector extends Collector {
         return webAppStatManager.getURIStatData();
     }
 
-    private GaugeMetricFamily createGauge(String metric, List<Map<String, Object>> list, Function<Map<String, Object>, Number> metricValueFunc) {
-        GaugeMetricFamily metricFamily = new GaugeMetricFamily(LABEL_PRE_DRUID + camelToSnake(metric), HELP_PRE_DRUID + metric, LABEL_NAMES);
-        list.forEach((m) -> metricFamily.addMetric(LABEL_VALUES_FUNCTION.apply(m), metricValueFunc.apply(m).doubleValue()));
-        return metricFamily;
+    private void writeGauge(SampleSink sink, String family, String help, List<String> labelNames, List<Map<String, Object>> list,
+                            Function<Map<String, Object>, SeriesLabels> labelValuesFunc, Function<Map<String, Object>, Number> metricValueFunc) {
+        sink.startFamily(family, Type.GAUGE, help, labelNames);
+        list.forEach((m) -> sink.sample(family, labelValuesFunc.apply(m).values(), metricValueFunc.apply(m).doubleValue()));
+        sink.endFamily();
     }
 
-    private GaugeMetricFamily createHistogram(String metric, List<Map<String, Object>> list, Function<Map<String, Object>, long[]> metricValueFunc) {
-        GaugeMetricFamily metricFamily = new GaugeMetricFamily(LABEL_PRE_DRUID + camelToSnake(metric) + LABEL_SUF_BUCKET, HELP_PRE_DRUID + metric, LABEL_HISTOGRAM_NAMES);
+    private void writeCounter(SampleSink sink, String family, String help, List<String> labelNames, List<Map<String, Object>> list,
+                              Function<Map<String, Object>, SeriesLabels> labelValuesFunc, Function<Map<String, Object>, Number> metricValueFunc) {
+        sink.startFamily(family, Type.COUNTER, help, labelNames);
+        list.forEach((m) -> sink.sample(family, labelValuesFunc.apply(m).values(), metricValueFunc.apply(m).doubleValue()));
+        sink.endFamily();
+    }
+
+    private void writeHistogram(SampleSink sink, String family, String help, List<String> labelNames, List<Map<String, Object>> list,
+                                Function<Map<String, Object>, SeriesLabels> labelValuesFunc, Function<Map<String, Object>, long[]> metricValueFunc) {
+        sink.startFamily(family, Type.GAUGE, help, labelNames);
 
         list.forEach((m) -> {
             long[] data = metricValueFunc.apply(m);
+            SeriesLabels labels = labelValuesFunc.apply(m);
             for (int i = 0; i < data.length && i < BUCKETS.length; i++) {
-                metricFamily.addMetric(LABEL_HISTOGRAM_VALUES_FUNCTION.apply(m, BUCKETS[i]), data[i]);
+                sink.sample(family, labels.bucket(i), data[i]);
             }
         });
-        return metricFamily;
+        sink.endFamily();
     }
 
-    private GaugeMetricFamily createSqlGauge(String metric, List<Map<String, Object>> list, Function<Map<String, Object>, Number> metricValueFunc) {
-        GaugeMetricFamily metricFamily = new GaugeMetricFamily(LABEL_PRE_SQL + camelToSnake(metric), HELP_PRE_SQL + metric, LABEL_SQL_NAMES);
-        list.forEach((m) -> metricFamily.addMetric(LABEL_SQL_VALUES_FUNCTION.apply(m), metricValueFunc.apply(m).doubleValue()));
-        return metricFamily;
-    }
-
-    private GaugeMetricFamily createSqlErrorGauge(String metric, List<Map<String, Object>> list, Function<Map<String, Object>, Date> metricValueFunc) {
-        GaugeMetricFamily metricFamily = new GaugeMetricFamily(LABEL_PRE_SQL + camelToSnake(metric), HELP_PRE_SQL + metric, LABEL_SQL_ERROR_NAMES);
+    private void writeSqlErrorGauge(SampleSink sink, List<String> labelNames, List<Map<String, Object>> list, Function<Map<String, Object>, Date> metricValueFunc) {
+        sink.startFamily(FAMILY_SQL_ERROR_NAME, Type.GAUGE, FAMILY_SQL_ERROR_HELP, labelNames);
         list.forEach((m) -> {
             Date date = metricValueFunc.apply(m);
             if(date != null) {
-                metricFamily.addMetric(LABEL_SQL_ERROR_VALUES_FUNCTION.apply(m), date.getTime());
+                sink.sample(FAMILY_SQL_ERROR_NAME, LABEL_SQL_ERROR_VALUES_FUNCTION.apply(m), date.getTime());
             }
         });
-        return metricFamily;
+        sink.endFamily();
     }
 
-    private GaugeMetricFamily createSqlHistogram(String metric, List<Map<String, Object>> list, Function<Map<String, Object>, long[]> metricValueFunc) {
-        GaugeMetricFamily metricFamily = new GaugeMetricFamily(LABEL_PRE_SQL + camelToSnake(metric) + LABEL_SUF_BUCKET, HELP_PRE_SQL + metric, LABEL_SQL_HISTOGRAM_NAMES);
-
-        list.forEach((m) -> {
-            long[] data = metricValueFunc.apply(m);
-            for (int i = 0; i < data.length && i < BUCKETS.length; i++) {
-                metricFamily.addMetric(LABEL_SQL_HISTOGRAM_VALUES_FUNCTION.apply(m, BUCKETS[i]), data[i]);
+    private void writeSqlInfo(SampleSink sink, List<Map<String, Object>> sqlList, List<Map<String, Object>> sqlTotalList) {
+        int idIndex = tagValues.size();
+        Set<String> written = new HashSet<>();
+        sink.startFamily(FAMILY_SQL_INFO_NAME, Type.GAUGE, FAMILY_SQL_INFO_HELP, LABEL_SQL_INFO_NAMES);
+        for (List<Map<String, Object>> list : Arrays.asList(sqlList, sqlTotalList)) {
+            for (Map<String, Object> m : list) {
+                List<String> values = sqlInfo((String) m.get(KEY_SQL));
+                if (written.add(values.get(idIndex))) {
+                    sink.sample(FAMILY_SQL_INFO_NAME, values, 1);
+                }
             }
-        });
-        return metricFamily;
+        }
+        sink.endFamily();
     }
 
-    private GaugeMetricFamily createUriGauge(String metric, List<Map<String, Object>> list, Function<Map<String, Object>, Number> metricValueFunc) {
-        GaugeMetricFamily metricFamily = new GaugeMetricFamily(LABEL_PRE_URI + camelToSnake(metric), HELP_PRE_URI + metric, LABEL_URI_NAMES);
-        list.forEach((m) -> metricFamily.addMetric(LABEL_URI_VALUES_FUNCTION.apply(m), metricValueFunc.apply(m).doubleValue()));
-        return metricFamily;
+    private void writeFilterGauge(SampleSink sink, String family, String help, List<DruidPoolRecorder> recorders,
+                                  ToLongFunction<DruidPoolRecorder> metricValueFunc) {
+        sink.startFamily(family, Type.GAUGE, help, LABEL_NAMES);
+        for (DruidPoolRecorder recorder : recorders) {
+            sink.sample(family, poolLabels(recorder.getName()).values(), metricValueFunc.applyAsLong(recorder));
+        }
+        sink.endFamily();
     }
 
-    private GaugeMetricFamily createUriHistogram(String metric, List<Map<String, Object>> list, Function<Map<String, Object>, long[]> metricValueFunc) {
-        GaugeMetricFamily metricFamily = new GaugeMetricFamily(LABEL_PRE_URI + camelToSnake(metric) + LABEL_SUF_BUCKET, HELP_PRE_URI + metric, LABEL_URI_HISTOGRAM_NAMES);
+    private void writeFilterHistogram(SampleSink sink, String family, String help, List<DruidPoolRecorder> recorders,
+                                      Function<DruidPoolRecorder, BucketCounter> metricValueFunc) {
+        sink.startFamily(family, Type.GAUGE, help, LABEL_HISTOGRAM_NAMES);
+        for (DruidPoolRecorder recorder : recorders) {
+            BucketCounter counter = metricValueFunc.apply(recorder);
+            SeriesLabels labels = poolLabels(recorder.getName());
+            for (int i = 0; i < BucketCounter.BUCKET_COUNT && i < BUCKETS.length; i++) {
+                sink.sample(family, labels.bucket(i), counter.get(i));
+            }
+        }
+        sink.endFamily();
+    }
 
-        list.forEach((m) -> {
-            long[] data = metricValueFunc.apply(m);
-            for (int i = 0; i < data.length && i < BUCKETS.length; i++) {
-                metricFamily.addMetric(LABEL_URI_HISTOGRAM_VALUES_FUNCTION.apply(m, BUCKETS[i]), data[i]);
+    private void writeSaturationGauges(SampleSink sink, List<PoolSaturationSampler.PoolSummary> summaries) {
+        for (int field = 0; field < PoolSaturationSampler.FIELDS.length; field++) {
+            for (int stat = 0; stat < PoolSaturationSampler.STATISTICS.length; stat++) {
+                String family = FAMILY_SATURATION_NAMES[field][stat];
+                sink.startFamily(family, Type.GAUGE, FAMILY_SATURATION_HELPS[field][stat], LABEL_NAMES);
+                for (PoolSaturationSampler.PoolSummary summary : summaries) {
+                    sink.sample(family, poolLabels(summary.getName()).values(), summary.get(field, stat));
+                }
+                sink.endFamily();
             }
+        }
+    }
+
+    private void writeStaleGauge(SampleSink sink, List<ParallelSections.Task> tasks) {
+        sink.startFamily(FAMILY_STALE_NAME, Type.GAUGE, FAMILY_STALE_HELP, LABEL_STALE_NAMES);
+        for (ParallelSections.Task task : tasks) {
+            List<String> values = new ArrayList<>(tagValues.size() + 2);
+            values.addAll(tagValues);
+            values.add(task.section);
+            values.add(task.source);
+            sink.sample(FAMILY_STALE_NAME, values, task.isStale() ? 1 : 0);
+        }
+        sink.endFamily();
+    }
+
+    /**
+     * Writes the {@code druid_exporter_*} families describing the scrape measured by {@code stats}. These families are
+     * written straight to the underlying sink, so they are not counted in {@code druid_exporter_series} themselves.
+     */
+    private void writeExporterGauges(SampleSink sink, ScrapeStats stats) {
+        int familyCount = stats.familyCount();
+
+        sink.startFamily(FAMILY_EXPORTER_DURATION_NAME, Type.GAUGE, FAMILY_EXPORTER_DURATION_HELP, LABEL_EXPORTER_SECTION_NAMES);
+        for (int i = 0; i < ScrapeStats.SECTIONS.length; i++) {
+            sink.sample(FAMILY_EXPORTER_DURATION_NAME, exporterLabelValues(ScrapeStats.SECTIONS[i]), stats.sectionNanos[i] / NANOSECONDS_PER_SECOND);
+        }
+        sink.sample(FAMILY_EXPORTER_DURATION_NAME, exporterLabelValues(EXPORTER_SECTION_TOTAL), stats.elapsedNanos() / NANOSECONDS_PER_SECOND);
+        sink.endFamily();
+
+        sink.startFamily(FAMILY_EXPORTER_SERIES_NAME, Type.GAUGE, FAMILY_EXPORTER_SERIES_HELP, LABEL_EXPORTER_FAMILY_NAMES);
+        for (int i = 0; i < familyCount; i++) {
+            sink.sample(FAMILY_EXPORTER_SERIES_NAME, exporterLabelValues(stats.family(i)), stats.series(i));
+        }
+        sink.endFamily();
+
+        sink.startFamily(FAMILY_EXPORTER_SQL_ENTRIES_NAME, Type.GAUGE, FAMILY_EXPORTER_SQL_ENTRIES_HELP, LABEL_EXPORTER_STATE_NAMES);
+        sink.sample(FAMILY_EXPORTER_SQL_ENTRIES_NAME, exporterLabelValues(EXPORTER_STATE_SEEN), stats.sqlSeen);
+        sink.sample(FAMILY_EXPORTER_SQL_ENTRIES_NAME, exporterLabelValues(EXPORTER_STATE_EMITTED), stats.sqlEmitted);
+        sink.endFamily();
+
+        sink.startFamily(FAMILY_EXPORTER_URI_ENTRIES_NAME, Type.GAUGE, FAMILY_EXPORTER_URI_ENTRIES_HELP, LABEL_EXPORTER_STATE_NAMES);
+        sink.sample(FAMILY_EXPORTER_URI_ENTRIES_NAME, exporterLabelValues(EXPORTER_STATE_SEEN), stats.uriSeen);
+        sink.sample(FAMILY_EXPORTER_URI_ENTRIES_NAME, exporterLabelValues(EXPORTER_STATE_EMITTED), stats.uriEmitted);
+        sink.endFamily();
+
+        long allocatedBytes = stats.allocatedBytesSinceStart();
+        sink.startFamily(FAMILY_EXPORTER_ALLOCATED_NAME, Type.GAUGE, FAMILY_EXPORTER_ALLOCATED_HELP, tagNames);
+        if (allocatedBytes >= 0) {
+            sink.sample(FAMILY_EXPORTER_ALLOCATED_NAME, tagValues, allocatedBytes);
+        }
+        sink.endFamily();
+
+        String[] caches = {"pool_labels", "sql_labels", "uri_labels", "sql_fingerprint", "sql_info"};
+        List<BoundedCache<?, ?>> cacheList = Arrays.asList(poolLabelCache, sqlLabelCache, uriLabelCache, fingerprintCache, sqlInfoCache);
+        sink.startFamily(FAMILY_EXPORTER_CACHE_HIT_NAME, Type.COUNTER, FAMILY_EXPORTER_CACHE_HIT_HELP, LABEL_EXPORTER_CACHE_NAMES);
+        for (int i = 0; i < caches.length; i++) {
+            sink.sample(FAMILY_EXPORTER_CACHE_HIT_NAME, exporterLabelValues(caches[i]), cacheList.get(i).getHitCount());
+        }
+        sink.endFamily();
+        sink.startFamily(FAMILY_EXPORTER_CACHE_MISS_NAME, Type.COUNTER, FAMILY_EXPORTER_CACHE_MISS_HELP, LABEL_EXPORTER_CACHE_NAMES);
+        for (int i = 0; i < caches.length; i++) {
+            sink.sample(FAMILY_EXPORTER_CACHE_MISS_NAME, exporterLabelValues(caches[i]), cacheList.get(i).getMissCount());
+        }
+        sink.endFamily();
+    }
+
+    private List<String> exporterLabelValues(String value) {
+        List<String> values = new ArrayList<>(tagValues.size() + 1);
+        values.addAll(tagValues);
+        values.add(value);
+        return values;
+    }
+
+    /**
+     * Label values of {@code druid_sql_info} for {@code sql}: the tags, the SQL ID and the statement text, truncated to
+     * {@code sqlInfoMaxLength}.
+     */
+    private List<String> sqlInfo(String sql) {
+        return sqlInfoCache.get(sql, key -> {
+            String text = reduceSpace(key);
+            String id = SqlStats.SQL_OTHER.equals(key) ? key : SqlStats.id(text);
+            List<String> values = new ArrayList<>(tagValues.size() + 2);
+            values.addAll(tagValues);
+            values.add(id);
+            values.add(truncate(text, sqlInfoMaxLength));
+            return Collections.unmodifiableList(values);
         });
-        return metricFamily;
+    }
+
+    private String sqlId(String sql) {
+        return sqlInfo(sql).get(tagValues.size());
+    }
+
+    private static String truncate(String text, int maxLength) {
+        if (maxLength <= 0 || text.length() <= maxLength) {
+            return text;
+        }
+        int end = Character.isHighSurrogate(text.charAt(maxLength - 1)) ? maxLength - 1 : maxLength;
+        return text.substring(0, end) + "...";
+    }
+
+    private SeriesLabels poolLabels(String pool) {
+        return poolLabelCache.get(pool, name -> new SeriesLabels(tagValues, new String[]{name}, BUCKETS));
+    }
+
+    /**
+     * Bounds the number of distinct pool, SQL and URI identities whose label values and SQL fingerprints are kept
+     * between scrapes.
+     */
+    public void setLabelCacheSize(int labelCacheSize) {
+        this.poolLabelCache = new BoundedCache<>(labelCacheSize);
+        this.sqlLabelCache = new BoundedCache<>(labelCacheSize);
+        this.uriLabelCache = new BoundedCache<>(labelCacheSize);
+        this.fingerprintCache = new BoundedCache<>(labelCacheSize);
+        this.sqlInfoCache = new BoundedCache<>(labelCacheSize);
+    }
+
+    public boolean isSqlFingerprint() {
+        return sqlFingerprint;
+    }
+
+    /**
+     * Merges statements that differ only in literals, {@code IN} list lengths or whitespace into one series per
+     * fingerprint. Fingerprints are cached per distinct statement text.
+     */
+    public void setSqlFingerprint(boolean sqlFingerprint) {
+        this.sqlFingerprint = sqlFingerprint;
+    }
+
+    public int getSqlTopK() {
+        return sqlTopK;
+    }
+
+    /**
+     * Limits each pool to the {@code sqlTopK} statements ranked highest by {@code rankBy} (one of {@code TotalTime},
+     * {@code ExecuteCount} or {@code ErrorCount}); the remaining statements are summed into a single
+     * {@code sql="__other__"} series. A value of 0 exports every statement.
+     */
+    public void setSqlTopK(int sqlTopK, String rankBy) {
+        if (!SqlStats.RANK_KEYS.contains(rankBy)) {
+            throw new IllegalArgumentException("Unsupported SQL rank key '" + rankBy + "', expected one of " + SqlStats.RANK_KEYS);
+        }
+        this.sqlTopK = sqlTopK;
+        this.sqlRankBy = rankBy;
+    }
+
+    public boolean isSqlIdLabel() {
+        return sqlIdLabel;
+    }
+
+    /**
+     * Labels SQL series with a short, stable {@code sql_id} hash of the statement instead of its full text, which is
+     * exported once per statement in {@code druid_sql_info{sql_id, sql}}. The info family is written by the first
+     * collection whose family filter accepts it once {@code infoInterval} has passed since it was last written
+     * ({@link Duration#ZERO} writes it on every collection), with the text cut to {@code infoMaxLength} characters
+     * (0 keeps the full text). Prometheus marks info series missing from a scrape as stale, so a non-zero
+     * {@code infoInterval} should be joined through {@code last_over_time(druid_sql_info[...])}. The interval is shared
+     * by every caller that writes the family, including the pusher and snapshot rebuilds, so with several Prometheus
+     * servers scraping the same instance only a zero interval guarantees each one receives the info family.
+     */
+    public void setSqlIdLabel(boolean sqlIdLabel, int infoMaxLength, Duration infoInterval) {
+        if (infoInterval.isNegative()) {
+            throw new IllegalArgumentException("SQL info interval must not be negative, got " + infoInterval);
+        }
+        this.sqlIdLabel = sqlIdLabel;
+        this.sqlInfoMaxLength = infoMaxLength;
+        this.sqlInfoIntervalNanos = infoInterval.toNanos();
+        this.lastSqlInfoNanos.set(System.nanoTime() - this.sqlInfoIntervalNanos);
+        this.sqlLabelCache.clear();
+        this.sqlInfoCache.clear();
     }
 
     public boolean isEnableSql() {
@@ -274,6 +892,144 @@ public class DruidCollector extends Collector {
         this.enableSql = enableSql;
     }
 
+    /**
+     * Reads the pool and SQL stats of every data source and the URI stats concurrently on up to {@code threads}
+     * workers. A section that is not read within {@code deadline} of the scrape start is exported with its previous
+     * values and flagged in {@code druid_collect_stale}. A {@code threads} value of 0 collects sequentially.
+     */
+    public void setParallelCollection(int threads, Duration deadline) {
+        ParallelSections previous = this.parallelSections;
+        this.parallelSections = threads > 0 ? new ParallelSections(threads, deadline) : null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Appends {@code _total} counters for the SQL and URI stats that keep growing when Druid resets or evicts an entry,
+     * by carrying the values from before each reset forward. Totals of a statement or URI that is no longer reported are
+     * dropped once it has not been seen for {@code ttl}. With {@linkplain #setSqlTopK top-K}, a statement keeps its own
+     * SQL counters from the first time it ranks until it is dropped, so the number of SQL counter series can exceed K
+     * per pool, while {@code __other__} counts only the statements that never ranked. While enabled, the SQL and URI sections are read in line rather
+     * than in parallel, so that a late read is never mistaken for a reset.
+     */
+    public void setMonotonicCounters(boolean enabled, Duration ttl) {
+        this.sqlTotals = enabled ? new CounterAccumulator(new String[]{KEY_NAME, KEY_SQL}, DRUID_METRICS_SQL_COUNTER_NAMES, ttl.toNanos()) : null;
+        this.uriTotals = enabled ? new CounterAccumulator(new String[]{KEY_URI}, DRUID_METRICS_URI_COUNTER_NAMES, ttl.toNanos()) : null;
+    }
+
+    /**
+     * Resets the Druid SQL and URI stats every {@code interval} to bound the memory held by their stat maps. A zero
+     * interval disables the periodic reset.
+     *
+     * @see #resetStats()
+     */
+    public void setStatResetInterval(Duration interval) {
+        ScheduledExecutorService previous = this.statResetScheduler;
+        if (previous != null) {
+            previous.shutdownNow();
+        }
+        if (interval.isZero() || interval.isNegative()) {
+            this.statResetScheduler = null;
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "druid-metrics-stat-reset");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = interval.toMillis();
+        scheduler.scheduleAtFixedRate(this::resetStatsQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        this.statResetScheduler = scheduler;
+    }
+
+    /**
+     * Resets the Druid SQL and URI stats. When {@linkplain #setMonotonicCounters monotonic counters} are enabled, the
+     * stats are read right before the reset so that the {@code _total} counters only miss what was recorded between
+     * that read and the reset.
+     */
+    public void resetStats() {
+        CounterAccumulator sqlTotals = this.sqlTotals;
+        if (sqlTotals != null) {
+            synchronized (sqlTotals) {
+                List<Map<String, Object>> sqlStatData = getSqlStatData();
+                observeSqlTotals(sqlTotals, sqlStatData, processSqlStatData(sqlStatData));
+                DruidStatManagerFacade.getInstance().resetSqlStat();
+                sqlTotals.fold();
+            }
+        } else {
+            DruidStatManagerFacade.getInstance().resetSqlStat();
+        }
+
+        CounterAccumulator uriTotals = this.uriTotals;
+        if (uriTotals != null) {
+            synchronized (uriTotals) {
+                uriTotals.observe(getUriStatData());
+                WebAppStatManager.getInstance().resetStat();
+                uriTotals.fold();
+            }
+        } else {
+            WebAppStatManager.getInstance().resetStat();
+        }
+    }
+
+    private void resetStatsQuietly() {
+        try {
+            resetStats();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to reset Druid stats", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        setParallelCollection(0, Duration.ZERO);
+        setStatResetInterval(Duration.ZERO);
+    }
+
+    /**
+     * Exports the max, min, mean and p99 of the pool saturation fields sampled by {@code saturationSampler} next to the
+     * instant pool gauges, or nothing when {@code null}.
+     */
+    public void setSaturationSampler(PoolSaturationSampler saturationSampler) {
+        this.saturationSampler = saturationSampler;
+    }
+
+    public boolean isIncremental() {
+        return incrementalSink != null;
+    }
+
+    /**
+     * Makes {@link #collect()} reuse the {@code Sample} and {@code MetricFamilySamples} objects of series and families
+     * that did not change since the previous scrape, so that scraping a mostly idle service mostly compares values.
+     * Concurrent calls to {@link #collect()} are serialized while enabled.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incrementalSink = incremental ? new IncrementalSamplesSink() : null;
+    }
+
+    public boolean isEnableExporterMetrics() {
+        return enableExporterMetrics;
+    }
+
+    /**
+     * Appends the {@code druid_exporter_*} families describing the cost of each scrape.
+     */
+    public void setEnableExporterMetrics(boolean enableExporterMetrics) {
+        this.enableExporterMetrics = enableExporterMetrics;
+    }
+
+    public boolean isEnableFilter() {
+        return enableFilter;
+    }
+
+    /**
+     * Exports the {@code druid_filter_*} families recorded by {@code DruidMetricsFilter}.
+     */
+    public void setEnableFilter(boolean enableFilter) {
+        this.enableFilter = enableFilter;
+    }
+
     public boolean isEnableUri() {
         return enableUri;
     }
@@ -281,4 +1037,31 @@ public class DruidCollector extends Collector {
     public void setEnableUri(boolean enableUri) {
         this.enableUri = enableUri;
     }
+
+    private static final class SqlKey {
+        private final String pool;
+        private final String sql;
+
+        private SqlKey(String pool, String sql) {
+            this.pool = pool;
+            this.sql = sql;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SqlKey)) {
+                return false;
+            }
+            SqlKey other = (SqlKey) o;
+            return Objects.equals(pool, other.pool) && Objects.equals(sql, other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(pool) + Objects.hashCode(sql);
+        }
+    }
 }
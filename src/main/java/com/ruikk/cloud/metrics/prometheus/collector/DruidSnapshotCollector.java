@@ -0,0 +1,154 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the samples of another collector from an immutable snapshot that is rebuilt by a background thread.
+ * <p>
+ * A scrape returns the last snapshot as long as it is younger than {@code maxStaleness}. When the cache is cold or
+ * the refresher has fallen behind, the first scrape rebuilds the snapshot and concurrent scrapes wait for that
+ * single rebuild instead of starting their own.
+ */
+public class DruidSnapshotCollector extends Collector implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DruidSnapshotCollector.class);
+
+    private final Collector delegate;
+    private final long maxStalenessNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Object refreshLock = new Object();
+
+    private volatile Snapshot snapshot;
+
+    private final LongAdder servedCount = new LongAdder();
+    private final LongAdder rebuildCount = new LongAdder();
+
+    private List<String> tagNames;
+    private List<String> tagValues;
+
+    public DruidSnapshotCollector(Collector delegate, Duration interval, Duration maxStaleness) {
+        this.delegate = delegate;
+        this.maxStalenessNanos = maxStaleness.toNanos();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "druid-metrics-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, interval.toMillis());
+        this.scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        Snapshot current = snapshot;
+        if (!isFresh(current)) {
+            synchronized (refreshLock) {
+                current = snapshot;
+                if (!isFresh(current)) {
+                    current = refresh();
+                    rebuildCount.increment();
+                }
+            }
+        }
+        servedCount.increment();
+        return tagNames == null ? current.samples : withExporterMetrics(current);
+    }
+
+    /**
+     * Appends {@code druid_exporter_snapshot_*} families reporting the age of the served snapshot and how often scrapes
+     * had to rebuild it, labelled with {@code tags}.
+     */
+    public void enableExporterMetrics(Map<String, String> tags) {
+        this.tagNames = new ArrayList<>(tags.keySet());
+        this.tagValues = new ArrayList<>(tags.values());
+    }
+
+    private List<MetricFamilySamples> withExporterMetrics(Snapshot current) {
+        List<MetricFamilySamples> list = new ArrayList<>(current.samples.size() + 3);
+        list.addAll(current.samples);
+        list.add(new GaugeMetricFamily("druid_exporter_snapshot_age_seconds", "Druid exporter age of the served snapshot", tagNames)
+                .addMetric(tagValues, (System.nanoTime() - current.createdNanos) / NANOSECONDS_PER_SECOND));
+        list.add(new CounterMetricFamily("druid_exporter_snapshot_served_total", "Druid exporter scrapes served by the snapshot cache", tagNames)
+                .addMetric(tagValues, servedCount.sum()));
+        list.add(new CounterMetricFamily("druid_exporter_snapshot_rebuild_total", "Druid exporter scrapes that rebuilt a cold or stale snapshot", tagNames)
+                .addMetric(tagValues, rebuildCount.sum()));
+        return list;
+    }
+
+    private boolean isFresh(Snapshot current) {
+        return current != null && System.nanoTime() - current.createdNanos <= maxStalenessNanos;
+    }
+
+    private Snapshot refresh() {
+        synchronized (refreshLock) {
+            Snapshot created = new Snapshot(Collections.unmodifiableList(new ArrayList<>(delegate.collect())), System.nanoTime());
+            snapshot = created;
+            return created;
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // keep the refresher scheduled, the next scrape falls back to a synchronous rebuild once the snapshot is stale
+            LOGGER.warn("Failed to refresh Druid metrics snapshot", e);
+        }
+    }
+
+    public Collector getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class Snapshot {
+        private final List<MetricFamilySamples> samples;
+        private final long createdNanos;
+
+        private Snapshot(List<MetricFamilySamples> samples, long createdNanos) {
+            this.samples = samples;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
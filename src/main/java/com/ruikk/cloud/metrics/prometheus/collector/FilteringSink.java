@@ -0,0 +1,67 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import io.prometheus.client.Collector;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * {@link SampleSink} passing on only the families whose name is accepted by a filter.
+ */
+final class FilteringSink implements SampleSink {
+
+    private final SampleSink delegate;
+    private final Predicate<String> familyFilter;
+
+    private boolean accepted;
+
+    FilteringSink(SampleSink delegate, Predicate<String> familyFilter) {
+        this.delegate = delegate;
+        this.familyFilter = familyFilter;
+    }
+
+    @Override
+    public void startFamily(String name, Collector.Type type, String help, List<String> labelNames) {
+        accepted = familyFilter.test(name);
+        if (accepted) {
+            delegate.startFamily(name, type, help, labelNames);
+        }
+    }
+
+    @Override
+    public void sample(String name, List<String> labelValues, double value) {
+        if (accepted) {
+            delegate.sample(name, labelValues, value);
+        }
+    }
+
+    @Override
+    public void endFamily() {
+        if (accepted) {
+            delegate.endFamily();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.Collector.MetricFamilySamples.Sample;
+
+import java.util.*;
+
+/**
+ * {@link SampleSink} backing the incremental mode of {@link DruidCollector#collect()}. It keeps, per family, a table of
+ * the series written by the previous scrapes keyed by their label values, holding the last value in a primitive array
+ * next to the {@code Sample} built for it.
+ * <p>
+ * A series whose value did not change reuses its {@code Sample}, and a family whose series are all unchanged and
+ * written in the same order reuses its whole {@code MetricFamilySamples}. Series and families that are not written by
+ * a scrape are dropped at its end. Not thread safe: scrapes must be {@link #begin begun} and {@link #finish finished}
+ * one at a time.
+ */
+final class IncrementalSamplesSink implements SampleSink {
+
+    private final Map<String, FamilyTable> tables = new HashMap<>();
+
+    private List<MetricFamilySamples> families;
+    private FamilyTable table;
+    private long generation;
+
+    void begin(int familyCapacity) {
+        generation++;
+        families = new ArrayList<>(familyCapacity);
+    }
+
+    List<MetricFamilySamples> finish() {
+        tables.values().removeIf(t -> t.generation != generation);
+        List<MetricFamilySamples> result = families;
+        families = null;
+        return result;
+    }
+
+    @Override
+    public void startFamily(String name, Collector.Type type, String help, List<String> labelNames) {
+        FamilyTable t = tables.get(name);
+        if (t == null || t.type != type || !t.help.equals(help) || !t.labelNames.equals(labelNames)) {
+            t = new FamilyTable(name, type, help, labelNames);
+            tables.put(name, t);
+        }
+        t.begin(generation);
+        table = t;
+    }
+
+    @Override
+    public void sample(String name, List<String> labelValues, double value) {
+        table.sample(name, labelValues, value);
+    }
+
+    @Override
+    public void endFamily() {
+        families.add(table.end());
+        table = null;
+    }
+
+    private static final class FamilyTable {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final String name;
+        private final Collector.Type type;
+        private final String help;
+        private final List<String> labelNames;
+
+        private final Map<List<String>, Integer> slots = new HashMap<>();
+        private double[] values = new double[INITIAL_CAPACITY];
+        private Sample[] samples = new Sample[INITIAL_CAPACITY];
+        private long[] seen = new long[INITIAL_CAPACITY];
+        private int[] free = new int[INITIAL_CAPACITY];
+        private int freeCount;
+        private int nextSlot;
+
+        private MetricFamilySamples previous;
+
+        private long generation;
+        private int seenCount;
+        private int position;
+        private List<Sample> current;
+
+        private FamilyTable(String name, Collector.Type type, String help, List<String> labelNames) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+            this.labelNames = labelNames;
+        }
+
+        private void begin(long generation) {
+            this.generation = generation;
+            this.seenCount = 0;
+            this.position = 0;
+            this.current = null;
+        }
+
+        private void sample(String sampleName, List<String> labelValues, double value) {
+            Integer index = slots.get(labelValues);
+            int slot;
+            if (index == null) {
+                slot = allocate();
+                slots.put(labelValues, slot);
+            } else {
+                slot = index;
+            }
+
+            Sample sample = samples[slot];
+            if (sample == null || Double.compare(values[slot], value) != 0 || !sample.name.equals(sampleName)) {
+                sample = new Sample(sampleName, labelNames, labelValues, value);
+                samples[slot] = sample;
+                values[slot] = value;
+            }
+            if (seen[slot] != generation) {
+                seen[slot] = generation;
+                seenCount++;
+            }
+            append(sample);
+        }
+
+        /**
+         * Adds {@code sample} to the family, copying the samples of the previous scrape into a new list only once the
+         * family diverges from it.
+         */
+        private void append(Sample sample) {
+            List<Sample> previousSamples = previous != null ? previous.samples : Collections.emptyList();
+            if (current == null) {
+                if (position < previousSamples.size() && previousSamples.get(position) == sample) {
+                    position++;
+                    return;
+                }
+                current = new ArrayList<>(Math.max(previousSamples.size(), position + 1));
+                current.addAll(previousSamples.subList(0, position));
+            }
+            current.add(sample);
+            position++;
+        }
+
+        private MetricFamilySamples end() {
+            if (seenCount < slots.size()) {
+                sweep();
+            }
+            if (current == null && previous != null && position == previous.samples.size()) {
+                return previous;
+            }
+            List<Sample> list = current != null ? current : new ArrayList<>(previous != null ? previous.samples.subList(0, position) : Collections.emptyList());
+            previous = new MetricFamilySamples(name, type, help, Collections.unmodifiableList(list));
+            current = null;
+            return previous;
+        }
+
+        private void sweep() {
+            for (Iterator<Integer> it = slots.values().iterator(); it.hasNext(); ) {
+                int slot = it.next();
+                if (seen[slot] != generation) {
+                    it.remove();
+                    samples[slot] = null;
+                    free[freeCount++] = slot;
+                }
+            }
+        }
+
+        private int allocate() {
+            if (freeCount > 0) {
+                return free[--freeCount];
+            }
+            if (nextSlot == values.length) {
+                int capacity = values.length * 2;
+                values = Arrays.copyOf(values, capacity);
+                samples = Arrays.copyOf(samples, capacity);
+                seen = Arrays.copyOf(seen, capacity);
+                free = Arrays.copyOf(free, capacity);
+            }
+            return nextSlot++;
+        }
+    }
+}
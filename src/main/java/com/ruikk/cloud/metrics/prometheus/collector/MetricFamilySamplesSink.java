@@ -0,0 +1,73 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link SampleSink} backing {@link DruidCollector#collect()}, turning the announced families into
+ * {@code MetricFamilySamples}.
+ */
+class MetricFamilySamplesSink implements SampleSink {
+
+    private final List<MetricFamilySamples> families;
+
+    private String name;
+    private Collector.Type type;
+    private String help;
+    private List<String> labelNames;
+    private List<MetricFamilySamples.Sample> samples;
+
+    MetricFamilySamplesSink(int initialCapacity) {
+        this.families = new ArrayList<>(initialCapacity);
+    }
+
+    @Override
+    public void startFamily(String name, Collector.Type type, String help, List<String> labelNames) {
+        this.name = name;
+        this.type = type;
+        this.help = help;
+        this.labelNames = labelNames;
+        this.samples = new ArrayList<>();
+    }
+
+    @Override
+    public void sample(String name, List<String> labelValues, double value) {
+        samples.add(new MetricFamilySamples.Sample(name, labelNames, labelValues, value));
+    }
+
+    @Override
+    public void endFamily() {
+        families.add(new MetricFamilySamples(name, type, help, samples));
+        samples = null;
+    }
+
+    List<MetricFamilySamples> getFamilies() {
+        return families;
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the stat reads of each data source and section on a fixed number of workers, waiting for them no longer than a
+ * deadline measured from the start of the scrape. The work queue is unbounded, but holds at most one read per data
+ * source and section since reads still in flight are reused.
+ * <p>
+ * A section that misses the deadline or fails is served from the values it returned last time and reported as stale.
+ * Its read keeps running in the background and refreshes those values when it completes; a later scrape reuses the
+ * in-flight read instead of starting another one, so a contended pool never occupies more than one worker.
+ */
+class ParallelSections implements AutoCloseable {
+
+    private final ThreadPoolExecutor executor;
+    private final long deadlineNanos;
+
+    private final Map<String, List<Map<String, Object>>> lastValues = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<List<Map<String, Object>>>> inFlight = new ConcurrentHashMap<>();
+
+    ParallelSections(int threads, Duration deadline) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "druid-metrics-collect-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.deadlineNanos = deadline.toNanos();
+    }
+
+    Batch start() {
+        return new Batch(System.nanoTime() + deadlineNanos);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private CompletableFuture<List<Map<String, Object>>> read(String key, Supplier<List<Map<String, Object>>> supplier) {
+        CompletableFuture<List<Map<String, Object>>> future = inFlight.get(key);
+        if (future != null) {
+            return future;
+        }
+        CompletableFuture<List<Map<String, Object>>> created = new CompletableFuture<>();
+        future = inFlight.putIfAbsent(key, created);
+        if (future != null) {
+            return future;
+        }
+        created.whenComplete((values, error) -> {
+            if (values != null) {
+                lastValues.put(key, values);
+            }
+            inFlight.remove(key, created);
+        });
+        try {
+            executor.execute(() -> {
+                try {
+                    created.complete(supplier.get());
+                } catch (Throwable e) {
+                    created.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    /**
+     * The reads of one scrape. Results are returned in submission order, whatever order the reads complete in.
+     */
+    class Batch {
+
+        private final long deadline;
+        private final Map<String, List<Task>> tasks = new LinkedHashMap<>();
+
+        private Batch(long deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * Marks {@code section} as read by this scrape, even if it has no data source to submit.
+         */
+        void include(String section) {
+            tasks.computeIfAbsent(section, s -> new ArrayList<>());
+        }
+
+        void submit(String section, String source, String key, Supplier<List<Map<String, Object>>> supplier) {
+            String taskKey = section + ':' + key;
+            tasks.computeIfAbsent(section, s -> new ArrayList<>()).add(new Task(section, source, taskKey, read(taskKey, supplier)));
+        }
+
+        List<Map<String, Object>> await(String section) {
+            List<Task> sectionTasks = tasks.getOrDefault(section, Collections.emptyList());
+            List<Map<String, Object>> list = new ArrayList<>();
+            for (Task task : sectionTasks) {
+                list.addAll(task.await(deadline));
+            }
+            return list;
+        }
+
+        /**
+         * Forgets the previous values of data sources that were not part of this scrape, e.g. closed pools. Sections
+         * this scrape did not read keep their values, so a filtered scrape does not lose the fallback of the others.
+         */
+        void finish() {
+            Set<String> keys = new HashSet<>();
+            tasks.values().forEach(list -> list.forEach(task -> keys.add(task.key)));
+            lastValues.keySet().removeIf(key -> tasks.containsKey(key.substring(0, key.indexOf(':'))) && !keys.contains(key));
+        }
+
+        List<Task> getTasks() {
+            List<Task> list = new ArrayList<>();
+            tasks.values().forEach(list::addAll);
+            return list;
+        }
+    }
+
+    final class Task {
+
+        final String section;
+        final String source;
+
+        private final String key;
+        private final CompletableFuture<List<Map<String, Object>>> future;
+
+        private boolean stale;
+
+        private Task(String section, String source, String key, CompletableFuture<List<Map<String, Object>>> future) {
+            this.section = section;
+            this.source = source;
+            this.key = key;
+            this.future = future;
+        }
+
+        private List<Map<String, Object>> await(long deadline) {
+            try {
+                return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                // fall back to the previous values below
+            }
+            stale = true;
+            return lastValues.getOrDefault(key, Collections.emptyList());
+        }
+
+        boolean isStale() {
+            return stale;
+        }
+    }
+}
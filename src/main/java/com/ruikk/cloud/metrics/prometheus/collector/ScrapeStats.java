@@ -0,0 +1,135 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import io.prometheus.client.Collector;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures one scrape of {@link DruidCollector}: the time spent reading each section, the number of series written per
+ * family and the bytes allocated by the scrape thread. Wraps the scrape's {@link SampleSink} to count series.
+ */
+final class ScrapeStats implements SampleSink {
+
+    static final String[] SECTIONS = {"pool", "sql", "uri", "filter"};
+    static final int SECTION_POOL = 0;
+    static final int SECTION_SQL = 1;
+    static final int SECTION_URI = 2;
+    static final int SECTION_FILTER = 3;
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED = isAllocationSupported();
+
+    private final SampleSink delegate;
+    private final long startNanos;
+    private final long startAllocatedBytes;
+
+    final long[] sectionNanos = new long[SECTIONS.length];
+    int sqlSeen;
+    int sqlEmitted;
+    int uriSeen;
+    int uriEmitted;
+
+    private String[] families;
+    private int[] series;
+    private int familyCount;
+
+    ScrapeStats(SampleSink delegate, int familyCapacity) {
+        this.delegate = delegate;
+        this.families = new String[familyCapacity];
+        this.series = new int[familyCapacity];
+        this.startNanos = System.nanoTime();
+        this.startAllocatedBytes = allocatedBytes();
+    }
+
+    void section(int section, long startNanos) {
+        sectionNanos[section] += System.nanoTime() - startNanos;
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Bytes allocated by the current thread since the scrape started, or -1 when the JVM cannot tell.
+     */
+    long allocatedBytesSinceStart() {
+        return ALLOCATION_SUPPORTED ? allocatedBytes() - startAllocatedBytes : -1;
+    }
+
+    int familyCount() {
+        return familyCount;
+    }
+
+    String family(int index) {
+        return families[index];
+    }
+
+    int series(int index) {
+        return series[index];
+    }
+
+    @Override
+    public void startFamily(String name, Collector.Type type, String help, List<String> labelNames) {
+        if (familyCount == families.length) {
+            families = Arrays.copyOf(families, familyCount * 2 + 1);
+            series = Arrays.copyOf(series, familyCount * 2 + 1);
+        }
+        families[familyCount++] = name;
+        delegate.startFamily(name, type, help, labelNames);
+    }
+
+    @Override
+    public void sample(String name, List<String> labelValues, double value) {
+        series[familyCount - 1]++;
+        delegate.sample(name, labelValues, value);
+    }
+
+    @Override
+    public void endFamily() {
+        delegate.endFamily();
+    }
+
+    private static long allocatedBytes() {
+        if (!ALLOCATION_SUPPORTED) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static boolean isAllocationSupported() {
+        try {
+            return THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemoryEnabled();
+        } catch (LinkageError e) {
+            // not a HotSpot compatible JVM
+            return false;
+        }
+    }
+}
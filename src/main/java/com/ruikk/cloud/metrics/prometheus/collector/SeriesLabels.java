@@ -0,0 +1,64 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable label values of one series, together with the label values of each of its histogram buckets.
+ */
+final class SeriesLabels {
+
+    private final List<String> values;
+    private final List<List<String>> bucketValues;
+
+    SeriesLabels(List<String> tagValues, String[] identity, String[] buckets) {
+        this.values = labelValues(tagValues, identity, null);
+        List<List<String>> bucketList = new ArrayList<>(buckets.length);
+        for (String bucket : buckets) {
+            bucketList.add(labelValues(tagValues, identity, bucket));
+        }
+        this.bucketValues = Collections.unmodifiableList(bucketList);
+    }
+
+    private static List<String> labelValues(List<String> tagValues, String[] identity, String bucket) {
+        List<String> list = new ArrayList<>(tagValues.size() + identity.length + 1);
+        list.addAll(tagValues);
+        Collections.addAll(list, identity);
+        if (bucket != null) {
+            list.add(bucket);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    List<String> values() {
+        return values;
+    }
+
+    List<String> bucket(int index) {
+        return bucketValues.get(index);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import java.util.regex.Pattern;
+
+/**
+ * Reduces a SQL statement to a fingerprint so that statements differing only in literals share one series:
+ * string and numeric literals become {@code ?}, {@code IN} lists collapse to {@code IN (?)} and runs of whitespace
+ * and comments become a single space. Identifiers, quoted identifiers and keywords are left untouched.
+ */
+final class SqlFingerprint {
+
+    private static final Pattern PATTERN_IN_LIST = Pattern.compile("(?i)\\b(in)\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    private SqlFingerprint() {
+    }
+
+    static String fingerprint(String sql) {
+        int length = sql.length();
+        StringBuilder sb = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || isCommentStart(sql, i)) {
+                i = skipSpace(sql, i);
+                if (sb.length() > 0 && i < length) {
+                    sb.append(' ');
+                }
+            } else if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+                sb.append('?');
+            } else if (c == '"' || c == '`') {
+                int end = skipQuoted(sql, i, c);
+                sb.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(c) && !isIdentifierPart(sb)) {
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return PATTERN_IN_LIST.matcher(sb).replaceAll("$1 (?)");
+    }
+
+    private static boolean isCommentStart(String sql, int i) {
+        if (i + 1 >= sql.length()) {
+            return false;
+        }
+        char c = sql.charAt(i);
+        char next = sql.charAt(i + 1);
+        return (c == '-' && next == '-') || (c == '/' && next == '*');
+    }
+
+    /**
+     * Returns the index just past the run of whitespace, {@code --} line comments and {@code /* *\/} block comments
+     * starting at {@code start}.
+     */
+    private static int skipSpace(String sql, int start) {
+        int i = start;
+        int length = sql.length();
+        while (i < length) {
+            if (Character.isWhitespace(sql.charAt(i))) {
+                i++;
+            } else if (isCommentStart(sql, i)) {
+                if (sql.charAt(i) == '-') {
+                    int end = sql.indexOf('\n', i + 2);
+                    i = end < 0 ? length : end + 1;
+                } else {
+                    int end = sql.indexOf("*/", i + 2);
+                    i = end < 0 ? length : end + 2;
+                }
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Returns the index just past the literal or quoted identifier starting at {@code start}, treating a doubled
+     * quote as an escaped quote. A backslash is an ordinary character as in standard SQL.
+     */
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        int length = sql.length();
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == quote) {
+                if (i + 1 < length && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isIdentifierPart(StringBuilder sb) {
+        if (sb.length() == 0) {
+            return false;
+        }
+        char last = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$';
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Helpers for the SQL stat maps returned by {@code DruidStatManagerFacade#getSqlStatDataList}.
+ */
+final class SqlStats {
+
+    static final String KEY_NAME = "Name";
+    static final String KEY_SQL = "SQL";
+    static final String KEY_LAST_ERROR_TIME = "LastErrorTime";
+    static final String KEY_ERR_CLS = "LastErrorClass";
+    static final String KEY_ERR_MSG = "LastErrorMessage";
+
+    static final String SQL_OTHER = "__other__";
+
+    static final Set<String> RANK_KEYS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList("TotalTime", "ExecuteCount", "ErrorCount")));
+
+    private static final String[] SUM_KEYS = {"ExecuteCount", "FetchRowCount", "TotalTime", "RunningCount", "ErrorCount"};
+    private static final String[] MAX_KEYS = {"MaxTimespan", "ConcurrentMax"};
+    private static final String[] HISTOGRAM_KEYS = {"Histogram", "FetchRowCountHistogram", "EffectedRowCountHistogram", "ExecuteAndResultHoldTimeHistogram"};
+
+    private SqlStats() {
+    }
+
+    /**
+     * Creates an empty aggregate for {@code sql} in {@code pool} that entries can be {@link #merge merged} into.
+     */
+    static Map<String, Object> aggregate(String pool, String sql) {
+        Map<String, Object> map = new HashMap<>();
+        map.put(KEY_NAME, pool);
+        map.put(KEY_SQL, sql);
+        for (String key : SUM_KEYS) {
+            map.put(key, 0L);
+        }
+        for (String key : MAX_KEYS) {
+            map.put(key, 0L);
+        }
+        return map;
+    }
+
+    /**
+     * Adds the counters of {@code from} to the aggregate {@code into}: counters are summed, {@code MaxTimespan} and
+     * {@code ConcurrentMax} keep the maximum, histograms are summed bucket by bucket and the most recent error wins.
+     */
+    static void merge(Map<String, Object> into, Map<String, Object> from) {
+        for (String key : SUM_KEYS) {
+            into.put(key, longValue(into, key) + longValue(from, key));
+        }
+        for (String key : MAX_KEYS) {
+            into.put(key, Math.max(longValue(into, key), longValue(from, key)));
+        }
+        for (String key : HISTOGRAM_KEYS) {
+            long[] source = (long[]) from.get(key);
+            if (source == null) {
+                continue;
+            }
+            long[] target = (long[]) into.get(key);
+            if (target == null || target.length < source.length) {
+                target = target == null ? new long[source.length] : Arrays.copyOf(target, source.length);
+                into.put(key, target);
+            }
+            for (int i = 0; i < source.length; i++) {
+                target[i] += source[i];
+            }
+        }
+        Date errorTime = (Date) from.get(KEY_LAST_ERROR_TIME);
+        Date currentErrorTime = (Date) into.get(KEY_LAST_ERROR_TIME);
+        if (errorTime != null && (currentErrorTime == null || errorTime.after(currentErrorTime))) {
+            into.put(KEY_LAST_ERROR_TIME, errorTime);
+            into.put(KEY_ERR_CLS, from.get(KEY_ERR_CLS));
+            into.put(KEY_ERR_MSG, from.get(KEY_ERR_MSG));
+        }
+    }
+
+    /**
+     * Merges the entries of each pool whose SQL maps to the same text under {@code sqlMapper} into one aggregate,
+     * keeping the order in which each mapped SQL is first seen.
+     */
+    static List<Map<String, Object>> mergeBy(List<Map<String, Object>> list, Function<String, String> sqlMapper) {
+        Map<String, Map<String, Map<String, Object>>> byPool = new LinkedHashMap<>();
+        List<Map<String, Object>> result = new ArrayList<>(list.size());
+        for (Map<String, Object> m : list) {
+            String pool = (String) m.get(KEY_NAME);
+            String sql = sqlMapper.apply((String) m.get(KEY_SQL));
+            Map<String, Object> aggregate = byPool.computeIfAbsent(pool, p -> new HashMap<>()).get(sql);
+            if (aggregate == null) {
+                aggregate = aggregate(pool, sql);
+                byPool.get(pool).put(sql, aggregate);
+                result.add(aggregate);
+            }
+            merge(aggregate, m);
+        }
+        return result;
+    }
+
+    /**
+     * Keeps the {@code k} entries of each pool with the highest {@code rankKey} and folds the rest of the pool into a
+     * single {@link #SQL_OTHER} entry, so that pool totals stay unchanged.
+     */
+    static List<Map<String, Object>> topK(List<Map<String, Object>> list, int k, String rankKey) {
+        Map<String, List<Map<String, Object>>> byPool = new LinkedHashMap<>();
+        for (Map<String, Object> m : list) {
+            byPool.computeIfAbsent((String) m.get(KEY_NAME), pool -> new ArrayList<>()).add(m);
+        }
+
+        Comparator<Map<String, Object>> comparator = Comparator.comparingLong(m -> longValue(m, rankKey));
+        List<Map<String, Object>> result = new ArrayList<>(Math.min(list.size(), byPool.size() * (k + 1)));
+        for (Map.Entry<String, List<Map<String, Object>>> entry : byPool.entrySet()) {
+            List<Map<String, Object>> entries = entry.getValue();
+            if (entries.size() <= k) {
+                result.addAll(entries);
+                continue;
+            }
+
+            PriorityQueue<Map<String, Object>> heap = new PriorityQueue<>(k + 1, comparator);
+            Map<String, Object> other = aggregate(entry.getKey(), SQL_OTHER);
+            for (Map<String, Object> m : entries) {
+                heap.add(m);
+                if (heap.size() > k) {
+                    merge(other, heap.poll());
+                }
+            }
+
+            List<Map<String, Object>> top = new ArrayList<>(heap);
+            top.sort(comparator.reversed());
+            result.addAll(top);
+            result.add(other);
+        }
+        return result;
+    }
+
+    /**
+     * Short ID of {@code sql} that stays the same across restarts: the first 64 bits of its MD5 digest, in hex.
+     */
+    static String id(String sql) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(sql.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support MD5
+            throw new IllegalStateException(e);
+        }
+        char[] id = new char[16];
+        for (int i = 0; i < 8; i++) {
+            id[i * 2] = Character.forDigit((digest[i] >> 4) & 0xF, 16);
+            id[i * 2 + 1] = Character.forDigit(digest[i] & 0xF, 16);
+        }
+        return new String(id);
+    }
+
+    static long longValue(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.exposition;
+
+import com.ruikk.cloud.metrics.prometheus.collector.DruidCollector;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the Druid families straight from {@code DruidCollector#collect(SampleSink)} in the Prometheus text format,
+ * or in OpenMetrics when the scraper asks for {@code application/openmetrics-text}.
+ * <p>
+ * No {@code MetricFamilySamples} are built: samples are streamed through a small buffer straight into the response,
+ * gzip compressed when the client accepts it.
+ * <p>
+ * A scrape can be narrowed to some families with {@code name[]} parameters and to some sections ({@code pool},
+ * {@code sql}, {@code uri} or {@code filter}) with {@code section} parameters, so that e.g. pool health can be scraped
+ * more often than the SQL and URI stats; sections none of whose families are requested are not read at all.
+ */
+public class DruidMetricsServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final transient DruidCollector collector;
+    private final boolean gzip;
+
+    public DruidMetricsServlet(DruidCollector collector, boolean gzip) {
+        this.collector = collector;
+        this.gzip = gzip;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (collector == null) {
+            // management.metrics.enable.druid=false
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Predicate<String> familyFilter;
+        try {
+            familyFilter = familyFilter(req);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        String accept = req.getHeader("Accept");
+        boolean openMetrics = accept != null && accept.contains("application/openmetrics-text");
+        ExpositionWriter exposition = new ExpositionWriter(openMetrics);
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(exposition.getContentType());
+
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        boolean compress = gzip && acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (compress) {
+            resp.setHeader("Content-Encoding", "gzip");
+        }
+
+        OutputStream out = compress ? new GZIPOutputStream(resp.getOutputStream(), BUFFER_SIZE) : resp.getOutputStream();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            collector.collect(exposition.reset(writer), familyFilter);
+            exposition.finish();
+        }
+    }
+
+    /**
+     * Filter selecting the families requested by the {@code name[]} and {@code section} parameters, or {@code null}
+     * when neither is given. Families outside of any section are kept unless excluded by {@code name[]}.
+     */
+    private static Predicate<String> familyFilter(HttpServletRequest req) {
+        String[] names = req.getParameterValues("name[]");
+        String[] sections = req.getParameterValues("section");
+        if (names == null && sections == null) {
+            return null;
+        }
+
+        Set<String> nameSet = names != null ? new HashSet<>(Arrays.asList(names)) : null;
+        Set<String> sectionSet = sections != null ? new HashSet<>(Arrays.asList(sections)) : null;
+        if (sectionSet != null && !DruidCollector.SECTIONS.containsAll(sectionSet)) {
+            throw new IllegalArgumentException("Unknown section in " + sectionSet + ", expected one of " + DruidCollector.SECTIONS);
+        }
+        return family -> {
+            if (nameSet != null && !nameSet.contains(family)) {
+                return false;
+            }
+            String section = DruidCollector.sectionOf(family);
+            return sectionSet == null || section == null || sectionSet.contains(section);
+        };
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.exposition;
+
+import com.ruikk.cloud.metrics.prometheus.collector.SampleSink;
+import io.prometheus.client.Collector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * {@link SampleSink} writing samples directly in the Prometheus text format (0.0.4) or in OpenMetrics (1.0.0).
+ * <p>
+ * The writer keeps no per-sample state, so one instance can be reused across scrapes with {@link #reset(Writer)}.
+ */
+public class ExpositionWriter implements SampleSink {
+
+    public static final String CONTENT_TYPE_004 = "text/plain; version=0.0.4; charset=utf-8";
+    public static final String CONTENT_TYPE_OPENMETRICS_100 = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0.0);
+
+    private final boolean openMetrics;
+
+    private Writer writer;
+    private List<String> labelNames;
+
+    public ExpositionWriter(boolean openMetrics) {
+        this.openMetrics = openMetrics;
+    }
+
+    public ExpositionWriter reset(Writer writer) {
+        this.writer = writer;
+        this.labelNames = null;
+        return this;
+    }
+
+    public String getContentType() {
+        return openMetrics ? CONTENT_TYPE_OPENMETRICS_100 : CONTENT_TYPE_004;
+    }
+
+    @Override
+    public void startFamily(String name, Collector.Type type, String help, List<String> labelNames) {
+        this.labelNames = labelNames;
+        try {
+            String familyName = openMetrics && type == Collector.Type.COUNTER && name.endsWith("_total")
+                    ? name.substring(0, name.length() - "_total".length()) : name;
+            writer.write("# HELP ");
+            writer.write(familyName);
+            writer.write(' ');
+            writeEscapedHelp(help);
+            writer.write('\n');
+            writer.write("# TYPE ");
+            writer.write(familyName);
+            writer.write(' ');
+            writer.write(typeString(type));
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void sample(String name, List<String> labelValues, double value) {
+        try {
+            writer.write(name);
+            int size = labelValues.size();
+            if (size > 0) {
+                writer.write('{');
+                for (int i = 0; i < size; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    writer.write(labelNames.get(i));
+                    writer.write("=\"");
+                    writeEscapedLabelValue(labelValues.get(i));
+                    writer.write('"');
+                }
+                if (!openMetrics) {
+                    writer.write(',');
+                }
+                writer.write('}');
+            }
+            writer.write(' ');
+            writeValue(value);
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void endFamily() {
+        labelNames = null;
+    }
+
+    /**
+     * Terminates the exposition, which OpenMetrics requires to end with {@code # EOF}.
+     */
+    public void finish() throws IOException {
+        if (openMetrics) {
+            writer.write("# EOF\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes {@code value} as {@code Collector.doubleToGoString} does, without allocating for the integral values
+     * below 1e7 that {@code Double.toString} prints in plain notation; -0.0 keeps its sign.
+     */
+    private void writeValue(double value) throws IOException {
+        long longValue = (long) value;
+        if (longValue == value && Math.abs(value) < 1e7 && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO_BITS) {
+            writer.write(Long.toString(longValue));
+            writer.write(".0");
+        } else {
+            writer.write(Collector.doubleToGoString(value));
+        }
+    }
+
+    private void writeEscapedHelp(String help) throws IOException {
+        for (int i = 0; i < help.length(); i++) {
+            char c = help.charAt(i);
+            switch (c) {
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '"':
+                    writer.write(openMetrics ? "\\\"" : "\"");
+                    break;
+                default:
+                    writer.write(c);
+            }
+        }
+    }
+
+    private void writeEscapedLabelValue(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\"':
+                    writer.write("\\\"");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                default:
+                    writer.write(c);
+            }
+        }
+    }
+
+    private String typeString(Collector.Type type) {
+        switch (type) {
+            case GAUGE:
+                return "gauge";
+            case COUNTER:
+                return "counter";
+            case SUMMARY:
+                return "summary";
+            case HISTOGRAM:
+                return "histogram";
+            default:
+                return openMetrics ? "unknown" : "untyped";
+        }
+    }
+}
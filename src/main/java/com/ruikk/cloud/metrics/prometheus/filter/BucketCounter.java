@@ -0,0 +1,68 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.filter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram over Druid's fixed millisecond buckets (1ms, 10ms, 100ms, 1s, 10s, 100s, Inf), where each bucket
+ * counts the events that fell into it, exactly like the histograms in Druid's own stat maps.
+ */
+public class BucketCounter {
+
+    public static final int BUCKET_COUNT = 7;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+    public BucketCounter() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long millis) {
+        buckets[index(millis)].increment();
+    }
+
+    public long get(int index) {
+        return buckets[index].sum();
+    }
+
+    private static int index(long millis) {
+        if (millis < 1) {
+            return 0;
+        } else if (millis < 10) {
+            return 1;
+        } else if (millis < 100) {
+            return 2;
+        } else if (millis < 1000) {
+            return 3;
+        } else if (millis < 10000) {
+            return 4;
+        } else if (millis < 100000) {
+            return 5;
+        }
+        return 6;
+    }
+}
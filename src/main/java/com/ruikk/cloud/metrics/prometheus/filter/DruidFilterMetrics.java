@@ -0,0 +1,57 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.filter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process wide registry of the {@link DruidPoolRecorder recorders} of every initialized {@link DruidMetricsFilter},
+ * in the same way Druid keeps its data sources in {@code DruidDataSourceStatManager}.
+ */
+public final class DruidFilterMetrics {
+
+    private static final DruidFilterMetrics INSTANCE = new DruidFilterMetrics();
+
+    private final List<DruidPoolRecorder> recorders = new CopyOnWriteArrayList<>();
+
+    private DruidFilterMetrics() {
+    }
+
+    public static DruidFilterMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public List<DruidPoolRecorder> getRecorders() {
+        return recorders;
+    }
+
+    void add(DruidPoolRecorder recorder) {
+        recorders.add(recorder);
+    }
+
+    void remove(DruidPoolRecorder recorder) {
+        recorders.remove(recorder);
+    }
+}
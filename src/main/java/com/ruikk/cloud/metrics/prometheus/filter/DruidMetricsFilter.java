@@ -0,0 +1,169 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.filter;
+
+import com.alibaba.druid.filter.FilterChain;
+import com.alibaba.druid.filter.FilterEventAdapter;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.pool.DruidPooledConnection;
+import com.alibaba.druid.proxy.jdbc.DataSourceProxy;
+import com.alibaba.druid.proxy.jdbc.ResultSetProxy;
+import com.alibaba.druid.proxy.jdbc.StatementProxy;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Druid filter that records connection and statement events of one data source into a {@link DruidPoolRecorder},
+ * so that the exporter reads a handful of counters instead of polling Druid's stat maps.
+ * <p>
+ * Only pool level counters and histograms are recorded: statement timings are not broken down per SQL. Per statement
+ * metrics still come from Druid's {@code StatFilter} through the {@code druid_sql_*} families, where fingerprinting,
+ * top-K and {@code sql_id} keep their cardinality in check; recording them here would need a second bounded SQL table.
+ * <p>
+ * Registered automatically by the auto configuration, or manually with {@code filters=prometheus}.
+ */
+public class DruidMetricsFilter extends FilterEventAdapter {
+
+    private volatile DruidPoolRecorder recorder;
+
+    @Override
+    public void init(DataSourceProxy dataSource) {
+        if (recorder == null) {
+            recorder = new DruidPoolRecorder(dataSource.getName());
+            DruidFilterMetrics.getInstance().add(recorder);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        DruidPoolRecorder current = recorder;
+        if (current != null) {
+            DruidFilterMetrics.getInstance().remove(current);
+            recorder = null;
+        }
+    }
+
+    @Override
+    public DruidPooledConnection dataSource_getConnection(FilterChain chain, DruidDataSource dataSource, long maxWaitMillis) throws SQLException {
+        DruidPoolRecorder current = recorder;
+        if (current == null) {
+            return chain.dataSource_connect(dataSource, maxWaitMillis);
+        }
+        long start = System.nanoTime();
+        DruidPooledConnection conn;
+        try {
+            conn = chain.dataSource_connect(dataSource, maxWaitMillis);
+        } catch (SQLException | RuntimeException e) {
+            current.acquireErrorCount.increment();
+            throw e;
+        }
+        long now = System.nanoTime();
+        current.acquireCount.increment();
+        current.acquireTime.record(TimeUnit.NANOSECONDS.toMillis(now - start));
+        if (conn != null && conn.getConnectedTimeNano() <= 0) {
+            conn.setConnectedTimeNano(now);
+        }
+        return conn;
+    }
+
+    @Override
+    public void dataSource_releaseConnection(FilterChain chain, DruidPooledConnection conn) throws SQLException {
+        DruidPoolRecorder current = recorder;
+        if (current != null) {
+            current.releaseCount.increment();
+            long connectedTimeNano = conn.getConnectedTimeNano();
+            if (connectedTimeNano > 0) {
+                current.holdTime.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectedTimeNano));
+            }
+        }
+        chain.dataSource_recycle(conn);
+    }
+
+    @Override
+    protected void statementExecuteBefore(StatementProxy statement, String sql) {
+        executeBefore(statement);
+    }
+
+    @Override
+    protected void statementExecuteAfter(StatementProxy statement, String sql, boolean result) {
+        executeAfter(statement);
+    }
+
+    @Override
+    protected void statementExecuteQueryBefore(StatementProxy statement, String sql) {
+        executeBefore(statement);
+    }
+
+    @Override
+    protected void statementExecuteQueryAfter(StatementProxy statement, String sql, ResultSetProxy resultSet) {
+        executeAfter(statement);
+    }
+
+    @Override
+    protected void statementExecuteUpdateBefore(StatementProxy statement, String sql) {
+        executeBefore(statement);
+    }
+
+    @Override
+    protected void statementExecuteUpdateAfter(StatementProxy statement, String sql, int updateCount) {
+        executeAfter(statement);
+    }
+
+    @Override
+    protected void statementExecuteBatchBefore(StatementProxy statement) {
+        executeBefore(statement);
+    }
+
+    @Override
+    protected void statementExecuteBatchAfter(StatementProxy statement, int[] result) {
+        executeAfter(statement);
+    }
+
+    @Override
+    protected void statement_executeErrorAfter(StatementProxy statement, String sql, Throwable error) {
+        DruidPoolRecorder current = recorder;
+        if (current != null) {
+            current.executeErrorCount.increment();
+            executeAfter(statement);
+        }
+    }
+
+    private void executeBefore(StatementProxy statement) {
+        DruidPoolRecorder current = recorder;
+        if (current != null) {
+            current.runningCount.increment();
+            statement.setLastExecuteStartNano();
+        }
+    }
+
+    private void executeAfter(StatementProxy statement) {
+        DruidPoolRecorder current = recorder;
+        if (current != null) {
+            current.runningCount.decrement();
+            current.executeCount.increment();
+            current.executeTime.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - statement.getLastExecuteStartNano()));
+        }
+    }
+}
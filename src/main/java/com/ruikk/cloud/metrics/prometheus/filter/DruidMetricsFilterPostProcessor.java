@@ -0,0 +1,52 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.filter;
+
+import com.alibaba.druid.filter.Filter;
+import com.alibaba.druid.pool.DruidDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.util.List;
+
+/**
+ * Adds a {@link DruidMetricsFilter} to every {@link DruidDataSource} bean that does not already have one.
+ */
+public class DruidMetricsFilterPostProcessor implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof DruidDataSource) {
+            DruidDataSource dataSource = (DruidDataSource) bean;
+            List<Filter> filters = dataSource.getProxyFilters();
+            if (filters.stream().noneMatch(filter -> filter instanceof DruidMetricsFilter)) {
+                DruidMetricsFilter filter = new DruidMetricsFilter();
+                if (dataSource.isInited()) {
+                    filter.init(dataSource);
+                }
+                filters.add(filter);
+            }
+        }
+        return bean;
+    }
+}
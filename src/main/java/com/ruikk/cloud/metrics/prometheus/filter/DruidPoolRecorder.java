@@ -0,0 +1,89 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.filter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters recorded by {@link DruidMetricsFilter} for a single data source.
+ */
+public class DruidPoolRecorder {
+
+    private final String name;
+
+    final LongAdder acquireCount = new LongAdder();
+    final LongAdder acquireErrorCount = new LongAdder();
+    final LongAdder releaseCount = new LongAdder();
+    final BucketCounter acquireTime = new BucketCounter();
+    final BucketCounter holdTime = new BucketCounter();
+
+    final LongAdder executeCount = new LongAdder();
+    final LongAdder executeErrorCount = new LongAdder();
+    final LongAdder runningCount = new LongAdder();
+    final BucketCounter executeTime = new BucketCounter();
+
+    public DruidPoolRecorder(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    public long getAcquireErrorCount() {
+        return acquireErrorCount.sum();
+    }
+
+    public long getReleaseCount() {
+        return releaseCount.sum();
+    }
+
+    public BucketCounter getAcquireTime() {
+        return acquireTime;
+    }
+
+    public BucketCounter getHoldTime() {
+        return holdTime;
+    }
+
+    public long getExecuteCount() {
+        return executeCount.sum();
+    }
+
+    public long getExecuteErrorCount() {
+        return executeErrorCount.sum();
+    }
+
+    public long getRunningCount() {
+        return runningCount.sum();
+    }
+
+    public BucketCounter getExecuteTime() {
+        return executeTime;
+    }
+}
@@ -23,28 +23,86 @@
 
 package com.ruikk.cloud.metrics.prometheus.manager;
 
+import com.ruikk.cloud.metrics.prometheus.DruidMetricsProperties;
 import com.ruikk.cloud.metrics.prometheus.collector.DruidCollector;
+import com.ruikk.cloud.metrics.prometheus.collector.DruidSnapshotCollector;
+import com.ruikk.cloud.metrics.prometheus.push.DruidMetricsPusher;
+import com.ruikk.cloud.metrics.prometheus.sampler.PoolSaturationSampler;
 import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.Collector;
 import org.springframework.boot.actuate.autoconfigure.metrics.MetricsProperties;
 
-public class DruidPrometheusManager {
+public class DruidPrometheusManager implements AutoCloseable {
 
     private final MetricsProperties properties;
 
+    private final DruidMetricsProperties druidProperties;
+
     private DruidCollector collector;
 
+    private DruidSnapshotCollector snapshotCollector;
+
+    private PoolSaturationSampler saturationSampler;
+
+    private DruidMetricsPusher pusher;
+
     public DruidPrometheusManager(MetricsProperties properties) {
+        this(properties, new DruidMetricsProperties());
+    }
+
+    public DruidPrometheusManager(MetricsProperties properties, DruidMetricsProperties druidProperties) {
         this.properties = properties;
+        this.druidProperties = druidProperties;
 
         if(this.isEnable()) {
             this.collector = new DruidCollector(properties.getTags(), isEnable("druid-sql"), isEnable("druid-uri"));
+            this.collector.setLabelCacheSize(druidProperties.getLabelCacheSize());
+            this.collector.setParallelCollection(druidProperties.getParallel().getThreads(), druidProperties.getParallel().getDeadline());
+            DruidMetricsProperties.Sampler sampler = druidProperties.getSampler();
+            if (sampler.isEnabled()) {
+                this.saturationSampler = new PoolSaturationSampler(sampler.getPeriod(), sampler.getWindow());
+                this.collector.setSaturationSampler(saturationSampler);
+            }
+            this.collector.setEnableExporterMetrics(druidProperties.isExporterMetrics());
+            this.collector.setIncremental(druidProperties.isIncremental());
+            this.collector.setEnableFilter(druidProperties.getFilter().isEnabled());
+            this.collector.setSqlFingerprint(druidProperties.getSql().isFingerprint());
+            this.collector.setSqlTopK(druidProperties.getSql().getTopK(), druidProperties.getSql().getRankBy());
+            this.collector.setSqlIdLabel(druidProperties.getSql().isIdLabel(), druidProperties.getSql().getInfoMaxLength(), druidProperties.getSql().getInfoInterval());
+            DruidMetricsProperties.Counters counters = druidProperties.getCounters();
+            if (counters.isEnabled()) {
+                this.collector.setMonotonicCounters(true, counters.getTtl());
+                this.collector.setStatResetInterval(counters.getResetInterval());
+            }
+            DruidMetricsProperties.Push push = druidProperties.getPush();
+            if (push.isEnabled()) {
+                this.pusher = new DruidMetricsPusher(collector, push.getUrl(), push.getInterval(), push.getQueueCapacity(), push.isGzip(), push.getTimeout());
+            }
         }
     }
 
     public void registerCollector(PrometheusMeterRegistry registry) {
         if(this.isEnable() && this.collector != null) {
-            collector.register(registry.getPrometheusRegistry());
+            getExportedCollector().register(registry.getPrometheusRegistry());
+        }
+    }
+
+    /**
+     * The collector that is actually attached to the registry, which is the plain {@link DruidCollector} unless
+     * the snapshot cache is enabled.
+     */
+    public Collector getExportedCollector() {
+        DruidMetricsProperties.Snapshot snapshot = druidProperties.getSnapshot();
+        if (!snapshot.isEnabled()) {
+            return collector;
+        }
+        if (snapshotCollector == null) {
+            snapshotCollector = new DruidSnapshotCollector(collector, snapshot.getInterval(), snapshot.getMaxStaleness());
+            if (druidProperties.isExporterMetrics()) {
+                snapshotCollector.enableExporterMetrics(properties.getTags());
+            }
         }
+        return snapshotCollector;
     }
 
     public boolean isEnable(){
@@ -58,4 +116,20 @@ public class DruidPrometheusManager {
     public DruidCollector getCollector() {
         return collector;
     }
+
+    @Override
+    public void close() {
+        if (pusher != null) {
+            pusher.close();
+        }
+        if (snapshotCollector != null) {
+            snapshotCollector.close();
+        }
+        if (saturationSampler != null) {
+            saturationSampler.close();
+        }
+        if (collector != null) {
+            collector.close();
+        }
+    }
 }
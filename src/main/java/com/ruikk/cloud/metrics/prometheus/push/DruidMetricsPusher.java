@@ -0,0 +1,265 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.push;
+
+import com.ruikk.cloud.metrics.prometheus.collector.DruidCollector;
+import com.ruikk.cloud.metrics.prometheus.exposition.ExpositionWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Pushes the Druid families to a Pushgateway compatible endpoint, for batch jobs and short lived workers that exit
+ * before Prometheus scrapes them.
+ * <p>
+ * A snapshot of {@link DruidCollector} is taken every interval on a background thread, encoded in the Prometheus text
+ * format, gzip compressed if enabled, and queued for a separate sender thread, so that a slow or unreachable endpoint
+ * never holds up the collection. The queue is bounded and drops its oldest snapshot when full. Since every push replaces
+ * the previous one of the same grouping key, the sender sends only the newest of the snapshots waiting in the queue.
+ * {@link #close()} takes and pushes a last snapshot before returning.
+ */
+public class DruidMetricsPusher implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DruidMetricsPusher.class);
+
+    private static final byte[] END = new byte[0];
+
+    private final DruidCollector collector;
+    private final URL url;
+    private final boolean gzip;
+    private final int timeoutMillis;
+    private final int queueCapacity;
+
+    private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService scheduler;
+    private final Thread sender;
+
+    private final LongAdder pushed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder superseded = new LongAdder();
+
+    private boolean closed;
+
+    /**
+     * @param url           endpoint the snapshots are {@code PUT} to, e.g.
+     *                      {@code http://pushgateway:9091/metrics/job/<job>/instance/<instance>}
+     * @param interval      time between two snapshots
+     * @param queueCapacity number of snapshots waiting to be sent before the oldest is dropped
+     * @param gzip          compress the snapshots and send them with {@code Content-Encoding: gzip}
+     * @param timeout       connect and read timeout of each push
+     */
+    public DruidMetricsPusher(DruidCollector collector, String url, Duration interval, int queueCapacity, boolean gzip, Duration timeout) {
+        if (url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("Push URL must be set");
+        }
+        if (interval.toMillis() < 1) {
+            throw new IllegalArgumentException("Push interval must be at least 1ms, got " + interval);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Push queue capacity must be at least 1, got " + queueCapacity);
+        }
+        try {
+            this.url = new URL(url);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid push URL '" + url + "'", e);
+        }
+        if (!"http".equals(this.url.getProtocol()) && !"https".equals(this.url.getProtocol())) {
+            throw new IllegalArgumentException("Push URL must be http or https, got '" + url + "'");
+        }
+        this.collector = collector;
+        this.gzip = gzip;
+        this.timeoutMillis = (int) Math.min(Integer.MAX_VALUE, timeout.toMillis());
+        this.queueCapacity = queueCapacity;
+        long intervalMillis = interval.toMillis();
+
+        this.sender = new Thread(this::sendLoop, "druid-metrics-push-sender");
+        this.sender.setDaemon(true);
+        this.sender.start();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "druid-metrics-push");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(this::snapshotQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void snapshotQuietly() {
+        try {
+            enqueue(snapshot());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to take Druid metrics snapshot for push", e);
+        }
+    }
+
+    private byte[] snapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        try (Writer writer = new OutputStreamWriter(gzip ? new GZIPOutputStream(bytes, 8192) : bytes, StandardCharsets.UTF_8)) {
+            ExpositionWriter exposition = new ExpositionWriter(false).reset(writer);
+            collector.collect(exposition);
+            exposition.finish();
+        }
+        return bytes.toByteArray();
+    }
+
+    private synchronized void enqueue(byte[] snapshot) {
+        while (snapshot != END && queue.size() >= queueCapacity && queue.poll() != null) {
+            dropped.increment();
+        }
+        queue.add(snapshot);
+    }
+
+    private void sendLoop() {
+        boolean failing = false;
+        while (true) {
+            byte[] body;
+            try {
+                body = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            boolean end = body == END;
+            byte[] next;
+            while (!end && (next = queue.poll()) != null) {
+                if (next == END) {
+                    end = true;
+                } else {
+                    superseded.increment();
+                    body = next;
+                }
+            }
+            if (body != END) {
+                try {
+                    push(body);
+                    pushed.increment();
+                    failing = false;
+                } catch (IOException | RuntimeException e) {
+                    failed.increment();
+                    if (failing) {
+                        LOGGER.debug("Failed to push Druid metrics to {}", url, e);
+                    } else {
+                        // log the rest of a run of failures at debug to not flood the log while the endpoint is down
+                        LOGGER.warn("Failed to push Druid metrics to {}", url, e);
+                        failing = true;
+                    }
+                }
+            }
+            if (end) {
+                return;
+            }
+        }
+    }
+
+    private void push(byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("PUT");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setRequestProperty("Content-Type", ExpositionWriter.CONTENT_TYPE_004);
+            if (gzip) {
+                connection.setRequestProperty("Content-Encoding", "gzip");
+            }
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            if (status / 100 != 2) {
+                throw new IOException("Unexpected HTTP status " + status);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    public long getPushedCount() {
+        return pushed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Snapshots dropped from a full queue.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Snapshots skipped because a newer one was queued before they were sent.
+     */
+    public long getSupersededCount() {
+        return superseded.sum();
+    }
+
+    /**
+     * Stops the periodic snapshots, then queues a last snapshot and waits up to twice the push timeout for the sender
+     * to deliver the queued snapshots.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshotQuietly();
+        enqueue(END);
+        try {
+            sender.join(2L * timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sender.interrupt();
+    }
+}
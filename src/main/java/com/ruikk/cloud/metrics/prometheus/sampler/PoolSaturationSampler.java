@@ -0,0 +1,239 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ruikk.cloud.metrics.prometheus.sampler;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.stat.DruidDataSourceStatManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the saturation fields of every {@link DruidDataSource} at a high frequency, so that bursts shorter than the
+ * scrape interval still show up in the exported max, min, mean and p99.
+ * <p>
+ * Samples are written into preallocated primitive ring buffers, one per data source, holding the last {@code window}
+ * of samples; recording a sample does not allocate. Statistics are computed over the whole window at scrape time, so
+ * several scrapers see the same values.
+ * <p>
+ * {@link DruidDataSource#getActiveCount()}, {@link DruidDataSource#getWaitThreadCount()} and
+ * {@link DruidDataSource#getPoolingCount()} all take the pool's main lock, which would put the sampler in the queue
+ * with {@code getConnection} 20 times a second per pool at the default period, during the very bursts it measures.
+ * The sampler therefore reads the backing fields without the lock; a sample may be off by the connections moving at
+ * that instant, which the statistics over the window absorb. If the fields are not found in the Druid version in use,
+ * it falls back to the locking getters, and a longer period should be configured.
+ */
+public class PoolSaturationSampler implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PoolSaturationSampler.class);
+
+    public static final String[] FIELDS = {"ActiveCount", "WaitThreadCount", "PoolingCount"};
+    public static final String[] STATISTICS = {"Max", "Min", "Mean", "P99"};
+
+    private static final long DATA_SOURCE_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Fields behind the locking getters, in the order of {@link #FIELDS}, or {@code null} to use the getters.
+     */
+    private static final Field[] COUNT_FIELDS = countFields("activeCount", "notEmptyWaitThreadCount", "poolingCount");
+
+    private final int capacity;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile PoolRing[] rings = new PoolRing[0];
+    private long lastRefreshNanos;
+
+    public PoolSaturationSampler(Duration period, Duration window) {
+        long periodMillis = Math.max(1, period.toMillis());
+        this.capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE / FIELDS.length, window.toMillis() / periodMillis));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "druid-metrics-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(this::sampleQuietly, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void sampleQuietly() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to sample Druid pool saturation", e);
+        }
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        if (now - lastRefreshNanos >= DATA_SOURCE_REFRESH_NANOS || lastRefreshNanos == 0) {
+            refreshDataSources();
+            lastRefreshNanos = now;
+        }
+        for (PoolRing ring : rings) {
+            DruidDataSource dataSource = ring.dataSource;
+            if (COUNT_FIELDS != null) {
+                ring.record(readCount(dataSource, 0), readCount(dataSource, 1), readCount(dataSource, 2));
+            } else {
+                ring.record(dataSource.getActiveCount(), dataSource.getWaitThreadCount(), dataSource.getPoolingCount());
+            }
+        }
+    }
+
+    private static int readCount(DruidDataSource dataSource, int field) {
+        try {
+            return COUNT_FIELDS[field].getInt(dataSource);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Field[] countFields(String... names) {
+        try {
+            Field[] fields = new Field[names.length];
+            for (int i = 0; i < names.length; i++) {
+                fields[i] = DruidDataSource.class.getDeclaredField(names[i]);
+                fields[i].setAccessible(true);
+            }
+            return fields;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Cannot read Druid pool counts without the pool lock, sampling through the locking getters", e);
+            return null;
+        }
+    }
+
+    private void refreshDataSources() {
+        Set<DruidDataSource> instances = DruidDataSourceStatManager.getDruidDataSourceInstances();
+        PoolRing[] current = rings;
+        if (current.length == instances.size() && Arrays.stream(current).allMatch(ring -> instances.contains(ring.dataSource))) {
+            return;
+        }
+        Map<DruidDataSource, PoolRing> existing = new IdentityHashMap<>();
+        for (PoolRing ring : current) {
+            existing.put(ring.dataSource, ring);
+        }
+        List<DruidDataSource> sorted = new ArrayList<>(instances);
+        sorted.sort(Comparator.comparingLong(DruidDataSource::getID));
+        PoolRing[] updated = new PoolRing[sorted.size()];
+        for (int i = 0; i < updated.length; i++) {
+            DruidDataSource dataSource = sorted.get(i);
+            PoolRing ring = existing.get(dataSource);
+            updated[i] = ring != null ? ring : new PoolRing(dataSource, capacity);
+        }
+        rings = updated;
+    }
+
+    /**
+     * Summarizes the current window of every sampled data source, indexed by {@link #FIELDS} then {@link #STATISTICS}.
+     */
+    public List<PoolSummary> summarize() {
+        PoolRing[] current = rings;
+        List<PoolSummary> list = new ArrayList<>(current.length);
+        for (PoolRing ring : current) {
+            PoolSummary summary = ring.summarize();
+            if (summary != null) {
+                list.add(summary);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    public static final class PoolSummary {
+
+        private final String name;
+        private final double[][] values;
+
+        private PoolSummary(String name, double[][] values) {
+            this.name = name;
+            this.values = values;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double get(int field, int statistic) {
+            return values[field][statistic];
+        }
+    }
+
+    /**
+     * Ring buffer of the last {@code capacity} samples of one data source, one int array per field. The sampler thread
+     * is the only writer; readers copy the window into a preallocated scratch array under the same monitor.
+     */
+    private static final class PoolRing {
+
+        private final DruidDataSource dataSource;
+        private final int[][] samples;
+        private final int[] scratch;
+
+        private int next;
+        private int size;
+
+        private PoolRing(DruidDataSource dataSource, int capacity) {
+            this.dataSource = dataSource;
+            this.samples = new int[FIELDS.length][capacity];
+            this.scratch = new int[capacity];
+        }
+
+        private synchronized void record(int active, int waiting, int idle) {
+            samples[0][next] = active;
+            samples[1][next] = waiting;
+            samples[2][next] = idle;
+            next = next + 1 == scratch.length ? 0 : next + 1;
+            if (size < scratch.length) {
+                size++;
+            }
+        }
+
+        private synchronized PoolSummary summarize() {
+            if (size == 0) {
+                return null;
+            }
+            double[][] values = new double[FIELDS.length][STATISTICS.length];
+            for (int field = 0; field < FIELDS.length; field++) {
+                System.arraycopy(samples[field], 0, scratch, 0, size);
+                Arrays.sort(scratch, 0, size);
+                long sum = 0;
+                for (int i = 0; i < size; i++) {
+                    sum += scratch[i];
+                }
+                values[field][0] = scratch[size - 1];
+                values[field][1] = scratch[0];
+                values[field][2] = (double) sum / size;
+                values[field][3] = scratch[Math.min(size - 1, (int) Math.ceil(size * 0.99) - 1)];
+            }
+            return new PoolSummary(dataSource.getName(), values);
+        }
+    }
+}
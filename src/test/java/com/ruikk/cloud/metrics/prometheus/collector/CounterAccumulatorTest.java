@@ -0,0 +1,137 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CounterAccumulatorTest {
+
+    private static final String[] LABEL_KEYS = {"Name", "SQL"};
+    private static final String[] COUNTER_KEYS = {"ExecuteCount", "TotalTime"};
+
+    private final CounterAccumulator accumulator = new CounterAccumulator(LABEL_KEYS, COUNTER_KEYS, TimeUnit.HOURS.toNanos(1));
+
+    @Test
+    public void totalsSurviveStatReset() {
+        assertEquals(5, value(accumulator.observe(rows(row("ds1", "a", 5))), "a"));
+        assertEquals(8, value(accumulator.observe(rows(row("ds1", "a", 8))), "a"));
+        // Druid reset the entry: counted again from zero
+        assertEquals(10, value(accumulator.observe(rows(row("ds1", "a", 2))), "a"));
+        assertEquals(12, value(accumulator.observe(rows(row("ds1", "a", 4))), "a"));
+
+        // reset by the exporter itself, the next read is below the previous one only by chance
+        accumulator.fold();
+        assertEquals(18, value(accumulator.observe(rows(row("ds1", "a", 6))), "a"));
+    }
+
+    @Test
+    public void missingEntryCountsFromZeroWhenItReappears() {
+        accumulator.observe(rows(row("ds1", "a", 5), row("ds1", "b", 1)));
+        assertEquals(5, value(accumulator.observe(rows(row("ds1", "b", 2))), "a"));
+        // evicted by Druid and recreated, with more executions than before the eviction
+        assertEquals(12, value(accumulator.observe(rows(row("ds1", "a", 7), row("ds1", "b", 3))), "a"));
+    }
+
+    @Test
+    public void regroupingNeverLowersTotals() {
+        Map<String, String> group = new HashMap<>();
+        Function<Map<String, Object>, Object[]> identity = m -> new Object[]{m.get("Name"), group.getOrDefault(m.get("SQL"), SqlStats.SQL_OTHER)};
+        Map<String, Long> previous = new HashMap<>();
+        long[] raw = new long[3];
+        long expected = 0;
+        Random random = new Random(42);
+        for (int read = 0; read < 50; read++) {
+            group.clear();
+            // a different statement gets its own series on every read
+            group.put("s" + random.nextInt(3), "s" + random.nextInt(3));
+            List<Map<String, Object>> list = new ArrayList<>();
+            for (int i = 0; i < raw.length; i++) {
+                if (random.nextInt(5) == 0) {
+                    // evicted by Druid: left out of this read and counted from zero when it comes back
+                    raw[i] = 0;
+                    continue;
+                }
+                long step = random.nextInt(5);
+                raw[i] += step;
+                expected += step;
+                list.add(row("ds1", "s" + i, raw[i]));
+            }
+
+            long sum = 0;
+            for (Map<String, Object> m : accumulator.observe(list, identity)) {
+                String sql = (String) m.get("SQL");
+                long value = (Long) m.get("ExecuteCount");
+                assertTrue(sql + " went down at read " + read, value >= previous.getOrDefault(sql, 0L));
+                previous.put(sql, value);
+                sum += value;
+            }
+            assertEquals(expected, sum);
+        }
+    }
+
+    @Test
+    public void evictedTotalStartsOverWhenItReappears() throws InterruptedException {
+        CounterAccumulator accumulator = new CounterAccumulator(LABEL_KEYS, COUNTER_KEYS, TimeUnit.MILLISECONDS.toNanos(50));
+        accumulator.observe(rows(row("ds1", "a", 5), row("ds1", "b", 1)));
+        Thread.sleep(100);
+        List<Map<String, Object>> list = accumulator.observe(rows(row("ds1", "b", 2)));
+        assertEquals(1, list.size());
+        assertFalse(accumulator.contains("ds1", "a"));
+
+        // a new series as far as Prometheus is concerned, counted from the values read again
+        assertEquals(3, value(accumulator.observe(rows(row("ds1", "a", 3), row("ds1", "b", 2))), "a"));
+        assertEquals(4, value(accumulator.observe(rows(row("ds1", "a", 4), row("ds1", "b", 2))), "a"));
+    }
+
+    private static Map<String, Object> row(String pool, String sql, long executeCount) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("Name", pool);
+        map.put("SQL", sql);
+        map.put("ExecuteCount", executeCount);
+        map.put("TotalTime", executeCount * 10);
+        return map;
+    }
+
+    @SafeVarargs
+    private static List<Map<String, Object>> rows(Map<String, Object>... rows) {
+        return Arrays.asList(rows);
+    }
+
+    private static long value(List<Map<String, Object>> totals, String sql) {
+        for (Map<String, Object> m : totals) {
+            if (sql.equals(m.get("SQL"))) {
+                assertEquals((Long) m.get("ExecuteCount") * 10, m.get("TotalTime"));
+                return (Long) m.get("ExecuteCount");
+            }
+        }
+        throw new AssertionError("no total for " + sql);
+    }
+}
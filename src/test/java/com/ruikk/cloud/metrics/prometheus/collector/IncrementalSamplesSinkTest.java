@@ -0,0 +1,162 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that the incremental mode of {@link DruidCollector#collect()} returns the same samples as a fresh collection.
+ */
+public class IncrementalSamplesSinkTest {
+
+    private static final List<String> LABEL_NAMES = Arrays.asList("pool", "sql");
+
+    private final IncrementalSamplesSink incremental = new IncrementalSamplesSink();
+
+    @Test
+    public void matchesFreshCollectionAcrossChanges() throws IOException {
+        scrape(family("a", Collector.Type.GAUGE, "x", 1, "y", 2), family("b", Collector.Type.GAUGE, "z", 3));
+        // a unchanged, b changed
+        scrape(family("a", Collector.Type.GAUGE, "x", 1, "y", 2), family("b", Collector.Type.GAUGE, "z", 4));
+        // a reordered, b emptied, c added
+        scrape(family("a", Collector.Type.GAUGE, "y", 2, "x", 1), family("b", Collector.Type.GAUGE), family("c", Collector.Type.GAUGE, "x", 0));
+        // y disappears, c disappears, NaN appears
+        scrape(family("a", Collector.Type.GAUGE, "x", 1), family("b", Collector.Type.GAUGE, "z", 4, "w", Double.NaN));
+        // y reappears with a new value, b changes type
+        scrape(family("a", Collector.Type.GAUGE, "x", 1, "y", 5), family("b", Collector.Type.COUNTER, "z", 4, "w", Double.NaN));
+
+        List<MetricFamilySamples> previous = scrape(family("a", Collector.Type.GAUGE, "x", 1, "y", 5), family("b", Collector.Type.COUNTER, "z", -0.0));
+        List<MetricFamilySamples> current = scrape(family("a", Collector.Type.GAUGE, "x", 1, "y", 5), family("b", Collector.Type.COUNTER, "z", 0.0));
+        assertSame(previous.get(0), current.get(0));
+    }
+
+    @Test
+    public void matchesFreshCollectionOnRandomScrapes() throws IOException {
+        Random random = new Random(7);
+        String[] names = {"a", "b", "c", "d"};
+        for (int scrape = 0; scrape < 500; scrape++) {
+            List<Object[]> families = new ArrayList<>();
+            for (String name : names) {
+                if (random.nextInt(6) == 0) {
+                    continue;
+                }
+                // distinct series in a random order, each with one of a few values
+                List<String> sqls = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    sqls.add("s" + i);
+                }
+                Collections.shuffle(sqls, random);
+                List<Object> series = new ArrayList<>();
+                for (String sql : sqls.subList(0, random.nextInt(8))) {
+                    series.add(sql);
+                    series.add((double) random.nextInt(3));
+                }
+                families.add(new Object[]{name, random.nextInt(20) == 0 ? Collector.Type.COUNTER : Collector.Type.GAUGE, series.toArray()});
+            }
+            Object[][] scripted = new Object[families.size()][];
+            for (int i = 0; i < scripted.length; i++) {
+                Object[] f = families.get(i);
+                scripted[i] = family((String) f[0], (Collector.Type) f[1], (Object[]) f[2]);
+            }
+            scrape(scripted);
+        }
+    }
+
+    @Test
+    public void matchesFreshCollectionForCollector() throws Exception {
+        DruidDataSource dataSource = new DruidDataSource();
+        dataSource.setUrl("jdbc:mock:incremental");
+        dataSource.setName("incremental");
+        dataSource.setFilters("stat");
+        DruidCollector fresh = new DruidCollector(Collections.emptyMap(), true, true);
+        DruidCollector incremental = new DruidCollector(Collections.emptyMap(), true, true);
+        incremental.setIncremental(true);
+        try {
+            for (int scrape = 0; scrape < 8; scrape++) {
+                try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                    for (int i = 0; i <= scrape % 3; i++) {
+                        statement.execute("select * from t" + (scrape + i) % 4 + " where id = " + i);
+                    }
+                }
+                if (scrape == 5) {
+                    fresh.resetStats();
+                }
+                assertEquals("scrape " + scrape, text(fresh.collect()), text(incremental.collect()));
+            }
+        } finally {
+            fresh.close();
+            incremental.close();
+            dataSource.close();
+        }
+    }
+
+    /**
+     * Writes one scrape of {@code families}, each given as name, type and alternating SQL label and value, to both a
+     * fresh and the incremental sink, and checks that they agree.
+     */
+    private List<MetricFamilySamples> scrape(Object[]... families) throws IOException {
+        MetricFamilySamplesSink fresh = new MetricFamilySamplesSink(families.length);
+        incremental.begin(families.length);
+        for (SampleSink sink : Arrays.asList(fresh, incremental)) {
+            for (Object[] family : families) {
+                String name = (String) family[0];
+                sink.startFamily(name, (Collector.Type) family[1], name + " help", LABEL_NAMES);
+                Object[] series = (Object[]) family[2];
+                for (int i = 0; i < series.length; i += 2) {
+                    sink.sample(name, Arrays.asList("ds1", (String) series[i]), (Double) series[i + 1]);
+                }
+                sink.endFamily();
+            }
+        }
+        List<MetricFamilySamples> result = incremental.finish();
+        assertEquals(text(fresh.getFamilies()), text(result));
+        return result;
+    }
+
+    private static Object[] family(String name, Collector.Type type, Object... series) {
+        Object[] values = series.clone();
+        for (int i = 1; i < values.length; i += 2) {
+            values[i] = ((Number) values[i]).doubleValue();
+        }
+        return new Object[]{name, type, values};
+    }
+
+    private static String text(List<MetricFamilySamples> families) throws IOException {
+        StringWriter writer = new StringWriter();
+        TextFormat.write004(writer, Collections.enumeration(families));
+        return writer.toString();
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelSectionsTest {
+
+    private final ParallelSections sections = new ParallelSections(2, Duration.ofMillis(100));
+    private final CountDownLatch stall = new CountDownLatch(1);
+
+    @After
+    public void close() {
+        stall.countDown();
+        sections.close();
+    }
+
+    @Test
+    public void poolOnlyScrapeKeepsSqlFallback() {
+        ParallelSections.Batch batch = sections.start();
+        batch.submit("pool", "ds1", "1", values("pool", 1));
+        batch.submit("sql", "ds1", "1", values("sql", 1));
+        assertEquals(values("pool", 1).get(), batch.await("pool"));
+        assertEquals(values("sql", 1).get(), batch.await("sql"));
+        batch.finish();
+
+        batch = sections.start();
+        batch.include("pool");
+        batch.submit("pool", "ds1", "1", values("pool", 2));
+        assertEquals(values("pool", 2).get(), batch.await("pool"));
+        batch.finish();
+
+        batch = sections.start();
+        batch.include("sql");
+        batch.submit("sql", "ds1", "1", stalled());
+        assertEquals(values("sql", 1).get(), batch.await("sql"));
+        batch.finish();
+        assertTrue(batch.getTasks().get(0).isStale());
+    }
+
+    @Test
+    public void forgetsDataSourcesMissingFromReadSection() {
+        ParallelSections.Batch batch = sections.start();
+        batch.submit("pool", "ds1", "1", values("pool", 1));
+        batch.await("pool");
+        batch.finish();
+
+        // the pool was closed: the section is read without it
+        batch = sections.start();
+        batch.include("pool");
+        batch.finish();
+
+        batch = sections.start();
+        batch.submit("pool", "ds1", "1", stalled());
+        assertEquals(Collections.emptyList(), batch.await("pool"));
+        assertTrue(batch.getTasks().get(0).isStale());
+    }
+
+    private static Supplier<List<Map<String, Object>>> values(String section, int value) {
+        return () -> Collections.singletonList(Collections.singletonMap(section, value));
+    }
+
+    private Supplier<List<Map<String, Object>>> stalled() {
+        return () -> {
+            try {
+                stall.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.emptyList();
+        };
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SqlFingerprintTest {
+
+    @Test
+    public void replacesLiterals() {
+        assertEquals("select * from t where a = ? and b IN (?) and c = ?",
+                SqlFingerprint.fingerprint("select * from t where a = 'x''y' and b IN (1, 2,3) and c = 4.5"));
+    }
+
+    @Test
+    public void keepsQuotedIdentifiers() {
+        assertEquals("select \"a b\", `c1` from t1 where x = ?",
+                SqlFingerprint.fingerprint("select \"a b\", `c1` from t1 where x = 10"));
+    }
+
+    @Test
+    public void backslashDoesNotEscapeQuote() {
+        assertEquals("select * from t where path = ? and id = ?",
+                SqlFingerprint.fingerprint("select * from t where path = 'C:\\' and id = 7"));
+    }
+
+    @Test
+    public void stripsComments() {
+        String expected = "select a from t where id = ?";
+        assertEquals(expected, SqlFingerprint.fingerprint("select a from t where id = 1"));
+        assertEquals(expected, SqlFingerprint.fingerprint("/* caller: OrderDao */ select a from t where id = 2"));
+        assertEquals(expected, SqlFingerprint.fingerprint("select a -- first column\nfrom t where id = 3 -- by id"));
+        assertEquals(expected, SqlFingerprint.fingerprint("select a from/**/t where id = 4"));
+    }
+
+    @Test
+    public void keepsCommentMarkersInLiterals() {
+        assertEquals("select * from t where a = ? and b = ?",
+                SqlFingerprint.fingerprint("select * from t where a = '--x' and b = '/*y*/'"));
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ruikk.cloud.metrics.prometheus.collector;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SqlStatsTest {
+
+    private static final String[] SUM_KEYS = {"ExecuteCount", "FetchRowCount", "TotalTime", "RunningCount", "ErrorCount"};
+    private static final String[] HISTOGRAM_KEYS = {"Histogram", "FetchRowCountHistogram", "EffectedRowCountHistogram", "ExecuteAndResultHoldTimeHistogram"};
+
+    @Test
+    public void topKKeepsPoolTotals() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            list.add(entry("a", "select " + i, i + 1, (i * 7) % 5 + 10 * i));
+        }
+        list.add(entry("b", "select 1", 3, 30));
+        list.add(entry("b", "select 2", 4, 40));
+
+        List<Map<String, Object>> result = SqlStats.topK(list, 2, "TotalTime");
+
+        assertTotals(list, result);
+        assertEquals(Arrays.asList("select 5", "select 4", SqlStats.SQL_OTHER), sqls(result, "a"));
+        assertEquals(Arrays.asList("select 1", "select 2"), sqls(result, "b"));
+    }
+
+    @Test
+    public void topKWithTiesKeepsExactlyK() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            list.add(entry("a", "select " + i, i, 100));
+        }
+
+        List<Map<String, Object>> result = SqlStats.topK(list, 3, "TotalTime");
+
+        assertTotals(list, result);
+        List<String> sqls = sqls(result, "a");
+        assertEquals(4, sqls.size());
+        assertEquals(SqlStats.SQL_OTHER, sqls.get(3));
+        assertEquals(3, new HashSet<>(sqls.subList(0, 3)).size());
+    }
+
+    @Test
+    public void topKLeavesSmallPoolsUntouched() {
+        List<Map<String, Object>> list = Arrays.asList(entry("a", "select 1", 1, 10), entry("a", "select 2", 2, 20));
+
+        assertEquals(list, SqlStats.topK(list, 2, "TotalTime"));
+        assertEquals(list, SqlStats.topK(list, 5, "TotalTime"));
+    }
+
+    @Test
+    public void mergeByKeepsPoolTotals() {
+        List<Map<String, Object>> list = Arrays.asList(
+                entry("a", "select * from t where id = 1", 1, 10),
+                entry("a", "select * from t where id = 2", 2, 20),
+                entry("b", "select * from t where id = 3", 3, 30),
+                entry("a", "update t set x = 1", 4, 40));
+        list.get(1).put("MaxTimespan", 90L);
+        list.get(0).put("Histogram", new long[]{1, 2});
+
+        List<Map<String, Object>> result = SqlStats.mergeBy(list, SqlFingerprint::fingerprint);
+
+        assertTotals(list, result);
+        assertEquals(Arrays.asList("select * from t where id = ?", "update t set x = ?"), sqls(result, "a"));
+        assertEquals(Collections.singletonList("select * from t where id = ?"), sqls(result, "b"));
+        assertEquals(90L, result.get(0).get("MaxTimespan"));
+    }
+
+    private static Map<String, Object> entry(String pool, String sql, long executeCount, long totalTime) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("Name", pool);
+        map.put("SQL", sql);
+        map.put("ExecuteCount", executeCount);
+        map.put("FetchRowCount", executeCount * 3);
+        map.put("TotalTime", totalTime);
+        map.put("RunningCount", 0L);
+        map.put("ErrorCount", executeCount % 2);
+        map.put("MaxTimespan", totalTime);
+        map.put("ConcurrentMax", 1L);
+        for (int i = 0; i < HISTOGRAM_KEYS.length; i++) {
+            map.put(HISTOGRAM_KEYS[i], new long[]{executeCount, totalTime, i, 0, 0, 0, 1, 0});
+        }
+        return map;
+    }
+
+    private static List<String> sqls(List<Map<String, Object>> list, String pool) {
+        return list.stream().filter(m -> pool.equals(m.get("Name"))).map(m -> (String) m.get("SQL")).collect(Collectors.toList());
+    }
+
+    private static void assertTotals(List<Map<String, Object>> expected, List<Map<String, Object>> actual) {
+        Set<Object> pools = expected.stream().map(m -> m.get("Name")).collect(Collectors.toSet());
+        assertEquals(pools, actual.stream().map(m -> m.get("Name")).collect(Collectors.toSet()));
+        for (Object pool : pools) {
+            for (String key : SUM_KEYS) {
+                assertEquals(pool + " " + key, sum(expected, pool, key), sum(actual, pool, key));
+            }
+            for (String key : HISTOGRAM_KEYS) {
+                assertArrayEquals(pool + " " + key, buckets(expected, pool, key), buckets(actual, pool, key));
+            }
+        }
+        assertTrue(actual.stream().allMatch(m -> m.get("SQL") != null));
+    }
+
+    private static long sum(List<Map<String, Object>> list, Object pool, String key) {
+        return list.stream().filter(m -> pool.equals(m.get("Name"))).mapToLong(m -> SqlStats.longValue(m, key)).sum();
+    }
+
+    private static long[] buckets(List<Map<String, Object>> list, Object pool, String key) {
+        long[] sum = new long[8];
+        list.stream().filter(m -> pool.equals(m.get("Name"))).map(m -> (long[]) m.get(key)).filter(Objects::nonNull).forEach(b -> {
+            for (int i = 0; i < b.length; i++) {
+                sum[i] += b[i];
+            }
+        });
+        return sum;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ruikk.cloud.metrics.prometheus.exposition;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.ruikk.cloud.metrics.prometheus.collector.DruidCollector;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.Collector.MetricFamilySamples.Sample;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link ExpositionWriter} writes the text format exactly like {@link TextFormat#write004}.
+ */
+public class ExpositionWriterTest {
+
+    private static final double[] VALUES = {
+            0, -0.0, 1, -1, 1.5, -2.25, 42, 9_999_999, 10_000_000, 123_456_789, 1e15, 1e16, 1e-5, 0.1,
+            Long.MAX_VALUE, Long.MIN_VALUE, Double.MAX_VALUE, Double.MIN_VALUE,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+    private static final String[] LABEL_VALUES = {"", "plain", "back\\slash", "quo\"te", "new\nline", "\u00fcn\u00ef\u4e2d", "{a=\"b\",}", "\\\"\\n"};
+
+    @Test
+    public void matchesTextFormat() throws IOException {
+        List<MetricFamilySamples> families = new ArrayList<>();
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < VALUES.length; i++) {
+            samples.add(new Sample("druid_values", Arrays.asList("pool", "sql"), Arrays.asList("ds" + i, LABEL_VALUES[i % LABEL_VALUES.length]), VALUES[i]));
+        }
+        families.add(new MetricFamilySamples("druid_values", Collector.Type.GAUGE, "Help with \\ backslash,\nnewline and \"quotes\"", samples));
+        families.add(new MetricFamilySamples("druid_empty", Collector.Type.GAUGE, "Family without samples", Collections.emptyList()));
+        families.add(new MetricFamilySamples("druid_unlabelled_total", Collector.Type.COUNTER, "Counter without labels",
+                Collections.singletonList(new Sample("druid_unlabelled_total", Collections.emptyList(), Collections.emptyList(), 3))));
+        List<Sample> buckets = new ArrayList<>();
+        for (String le : new String[]{"1ms", "10ms", "Inf"}) {
+            buckets.add(new Sample("druid_histogram_bucket", Arrays.asList("pool", "le"), Arrays.asList("ds1", le), 7));
+        }
+        families.add(new MetricFamilySamples("druid_histogram", Collector.Type.UNTYPED, "Untyped family", buckets));
+
+        assertEquals(textFormat(families), exposition(families));
+    }
+
+    @Test
+    public void matchesTextFormatForCollector() throws Exception {
+        DruidDataSource dataSource = new DruidDataSource();
+        dataSource.setUrl("jdbc:mock:exposition");
+        dataSource.setName("exposition");
+        dataSource.setFilters("stat");
+        try {
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("select * from t where a = 'x\\\"y'\nand b = 1");
+            }
+            DruidCollector collector = new DruidCollector(Collections.emptyMap(), true, true);
+            collector.setEnableExporterMetrics(false);
+
+            StringWriter writer = new StringWriter();
+            ExpositionWriter exposition = new ExpositionWriter(false).reset(writer);
+            collector.collect(exposition);
+            exposition.finish();
+
+            String expected = textFormat(collector.collect());
+            assertTrue(expected.contains("pool=\"exposition\""));
+            assertEquals(expected, writer.toString());
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    private static String textFormat(List<MetricFamilySamples> families) throws IOException {
+        StringWriter writer = new StringWriter();
+        TextFormat.write004(writer, Collections.enumeration(families));
+        return writer.toString();
+    }
+
+    private static String exposition(List<MetricFamilySamples> families) throws IOException {
+        StringWriter writer = new StringWriter();
+        ExpositionWriter exposition = new ExpositionWriter(false).reset(writer);
+        for (MetricFamilySamples family : families) {
+            List<String> labelNames = family.samples.isEmpty() ? Collections.emptyList() : family.samples.get(0).labelNames;
+            exposition.startFamily(family.name, family.type, family.help, labelNames);
+            for (Sample sample : family.samples) {
+                exposition.sample(sample.name, sample.labelValues, sample.value);
+            }
+            exposition.endFamily();
+        }
+        exposition.finish();
+        return writer.toString();
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019 Brent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ruikk.cloud.metrics.prometheus.push;
+
+import com.ruikk.cloud.metrics.prometheus.collector.DruidCollector;
+import com.ruikk.cloud.metrics.prometheus.exposition.ExpositionWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link DruidMetricsPusher} against a local stand-in for the Pushgateway.
+ */
+public class DruidMetricsPusherTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private final DruidCollector collector = new DruidCollector(Collections.emptyMap(), true, true);
+    private volatile CountDownLatch stall = new CountDownLatch(0);
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/metrics/job/test", this::handle);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/metrics/job/test";
+    }
+
+    @After
+    public void stopServer() {
+        stall.countDown();
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            // read the whole body before answering, the connection is reused for the next push
+            Request request = new Request(exchange.getRequestMethod(),
+                    exchange.getRequestHeaders().getFirst("Content-Type"),
+                    exchange.getRequestHeaders().getFirst("Content-Encoding"),
+                    readFully(exchange.getRequestBody()));
+            stall.await();
+            requests.add(request);
+            exchange.sendResponseHeaders(200, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Test
+    public void pushesSnapshots() throws Exception {
+        try (DruidMetricsPusher pusher = new DruidMetricsPusher(collector, url, Duration.ofMillis(50), 4, false, TIMEOUT)) {
+            Request request = requests.poll(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            assertTrue("no push received", request != null);
+            assertEquals("PUT", request.method);
+            assertEquals(ExpositionWriter.CONTENT_TYPE_004, request.contentType);
+            assertNull(request.contentEncoding);
+            assertTrue(request.text().contains("# TYPE druid_"));
+        }
+    }
+
+    @Test
+    public void gzipsSnapshots() throws Exception {
+        try (DruidMetricsPusher pusher = new DruidMetricsPusher(collector, url, Duration.ofMillis(50), 4, true, TIMEOUT)) {
+            Request request = requests.poll(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            assertTrue("no push received", request != null);
+            assertEquals("gzip", request.contentEncoding);
+            String text = new String(readFully(new GZIPInputStream(new ByteArrayInputStream(request.body))), StandardCharsets.UTF_8);
+            assertTrue(text.contains("# TYPE druid_"));
+        }
+    }
+
+    @Test
+    public void dropsOldestWhileEndpointStalls() throws Exception {
+        stall = new CountDownLatch(1);
+        DruidMetricsPusher pusher = new DruidMetricsPusher(collector, url, Duration.ofMillis(10), 1, false, TIMEOUT);
+        try {
+            long deadline = System.nanoTime() + TIMEOUT.toNanos();
+            while (pusher.getDroppedCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue("no snapshot dropped while the endpoint stalled", pusher.getDroppedCount() > 0);
+        } finally {
+            stall.countDown();
+            pusher.close();
+        }
+        // the stalled push, then the newest of the queued snapshots and the final one, coalesced or not
+        assertTrue(pusher.getPushedCount() >= 2);
+        assertEquals(0, pusher.getFailedCount());
+    }
+
+    @Test
+    public void pushesFinalSnapshotOnClose() throws Exception {
+        DruidMetricsPusher pusher = new DruidMetricsPusher(collector, url, Duration.ofHours(1), 4, false, TIMEOUT);
+        pusher.close();
+        assertEquals(1, pusher.getPushedCount());
+        assertEquals(1, requests.size());
+        assertTrue(requests.take().text().contains("# TYPE druid_"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonHttpUrl() {
+        new DruidMetricsPusher(collector, "file:/tmp/metrics", Duration.ofSeconds(15), 4, false, TIMEOUT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroInterval() {
+        new DruidMetricsPusher(collector, url, Duration.ZERO, 4, false, TIMEOUT);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Request {
+
+        private final String method;
+        private final String contentType;
+        private final String contentEncoding;
+        private final byte[] body;
+
+        private Request(String method, String contentType, String contentEncoding, byte[] body) {
+            this.method = method;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.body = body;
+        }
+
+        private String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}